@@ -0,0 +1,67 @@
+package com.github.jlgrock.poormansioc;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Clearing a context and building it up again, the way test suites do before every test.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ClearAndRebuildBenchmark {
+
+    public interface Repository {}
+
+    public static class UserRepository implements Repository {}
+
+    public static class UserService {
+        public UserService(final Repository repository) {
+        }
+    }
+
+    public static class ServiceConfiguration {
+        public UserService userService(@Qualifier("repository0") final Repository repository) {
+            return new UserService(repository);
+        }
+    }
+
+    @Param({"100", "10000"})
+    private int beanCount;
+
+    private Map<String, Object> beans;
+    private PoorMansIocContext context;
+
+    @Setup
+    public void setup() {
+        beans = new LinkedHashMap<>();
+        for (int i = 0; i < beanCount; i++) {
+            beans.put("repository" + i, new UserRepository());
+        }
+        context = new PoorMansIocContext();
+    }
+
+    @Benchmark
+    public PoorMansIocContext clearAndRebuild() {
+        context.clear();
+        context.addBeans(beans);
+        context.addConfigurationClass(ServiceConfiguration.class);
+        return context;
+    }
+}
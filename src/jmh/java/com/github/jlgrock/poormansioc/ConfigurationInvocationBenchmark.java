@@ -0,0 +1,100 @@
+package com.github.jlgrock.poormansioc;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Calling configuration class constructors and factory methods reflectively, compared to the cached method handles
+ * that the context uses.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConfigurationInvocationBenchmark {
+
+    public static class Repository {}
+
+    public static class Cache {}
+
+    public static class Service {
+        public Service(final Repository repository, final Cache cache) {
+        }
+    }
+
+    public static class ServiceConfiguration {
+        public Repository repository() {
+            return new Repository();
+        }
+
+        public Cache cache() {
+            return new Cache();
+        }
+
+        public Service service(final Repository repository, final Cache cache) {
+            return new Service(repository, cache);
+        }
+    }
+
+    private Object configObject;
+    private Object[] params;
+    private Constructor<?> constructor;
+    private Method method;
+    private ConfigurationPlan plan;
+    private FactoryMethod factoryMethod;
+
+    @Setup
+    public void setup() throws Exception {
+        configObject = new ServiceConfiguration();
+        params = new Object[] {new Repository(), new Cache()};
+        constructor = ServiceConfiguration.class.getConstructor();
+        method = ServiceConfiguration.class.getMethod("service", Repository.class, Cache.class);
+        plan = ConfigurationPlan.of(ServiceConfiguration.class);
+        for (FactoryMethod candidate : plan.getFactoryMethods()) {
+            if (candidate.getMethod().equals(method)) {
+                factoryMethod = candidate;
+            }
+        }
+    }
+
+    @Benchmark
+    public Object constructorReflection() throws Exception {
+        return constructor.newInstance();
+    }
+
+    @Benchmark
+    public Object constructorMethodHandle() {
+        return plan.instantiate();
+    }
+
+    @Benchmark
+    public Object factoryMethodReflection() throws Exception {
+        return method.invoke(configObject, params);
+    }
+
+    @Benchmark
+    public Object factoryMethodHandle() {
+        return factoryMethod.invoke(configObject, params);
+    }
+
+    @Benchmark
+    public PoorMansIocContext addConfigurationClass() {
+        PoorMansIocContext context = new PoorMansIocContext();
+        context.addConfigurationClass(ServiceConfiguration.class);
+        return context;
+    }
+}
@@ -0,0 +1,59 @@
+package com.github.jlgrock.poormansioc;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Retrieving every bean of an interface that a large number of beans implement.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GetAllBeansByTypeBenchmark {
+
+    public interface EventHandler {}
+
+    public static class OrderHandler implements EventHandler {}
+
+    @Param({"10", "1000", "100000"})
+    private int width;
+
+    private PoorMansIocContext context;
+
+    @Setup
+    public void setup() {
+        Map<String, Object> beans = new LinkedHashMap<>();
+        for (int i = 0; i < width; i++) {
+            beans.put("handler" + i, new OrderHandler());
+        }
+        context = new PoorMansIocContext();
+        context.addBeans(beans);
+    }
+
+    @Benchmark
+    public Object allBeansByType() {
+        return context.getAllBeansByType(EventHandler.class);
+    }
+
+    @Benchmark
+    public void forEachBeanOfType(final Blackhole blackhole) {
+        context.forEachBeanOfType(EventHandler.class, blackhole::consume);
+    }
+}
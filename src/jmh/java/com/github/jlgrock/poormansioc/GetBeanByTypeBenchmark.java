@@ -0,0 +1,87 @@
+package com.github.jlgrock.poormansioc;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Lookups on the hot path.  Run with the GC profiler (the default for the `jmh` task) and check that
+ * `gc.alloc.rate.norm` is zero for every benchmark.  The `frozen` parameter compares the regular registry with the
+ * one built by {@link PoorMansIocContext#freeze()}.  `byGenericType` looks up one of two beans of the same class that
+ * only differ in their type arguments.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GetBeanByTypeBenchmark {
+
+    public interface Handler {}
+
+    public static class OrderHandler implements Handler {}
+
+    public static class UserService {}
+
+    @Param({"false", "true"})
+    private boolean frozen;
+
+    private PoorMansIocContext context;
+    private Supplier<Handler> provider;
+    private final TypeToken<Map<String, UserService>> usersByName = new TypeToken<Map<String, UserService>>() { };
+
+    @Setup
+    public void setup() {
+        context = new PoorMansIocContext();
+        context.addBean(new UserService(), "userService");
+        context.addBean(Collections.singletonMap("user", new UserService()), "usersByName", usersByName);
+        context.addBean(Collections.singletonMap("order", new OrderHandler()), "handlersByName",
+                new TypeToken<Map<String, Handler>>() { });
+        for (int i = 0; i < 100; i++) {
+            context.addBean(new OrderHandler(), "handler" + i);
+        }
+        if (frozen) {
+            context = context.freeze();
+        }
+        provider = context.getProvider(Handler.class, "handler42");
+    }
+
+    @Benchmark
+    public Object byName() {
+        return context.getBeanByName("userService");
+    }
+
+    @Benchmark
+    public Object byType() {
+        return context.getBeanByType(UserService.class);
+    }
+
+    @Benchmark
+    public Object byTypeWithQualifier() {
+        return context.getBeanByType(Handler.class, "handler42");
+    }
+
+    @Benchmark
+    public Object byGenericType() {
+        return context.getBeanByType(usersByName);
+    }
+
+    @Benchmark
+    public Object provider() {
+        return provider.get();
+    }
+}
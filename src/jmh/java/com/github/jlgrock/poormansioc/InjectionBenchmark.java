@@ -0,0 +1,76 @@
+package com.github.jlgrock.poormansioc;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Injecting into an object created outside the context, such as a request handler created by another framework.
+ * `injectInto` uses the cached plan and binding, `byHand` looks every bean up and sets the fields directly, which is
+ * what injecting would cost without them.  `injectInto` should allocate nothing.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class InjectionBenchmark {
+
+    public interface Repository {}
+
+    public static class UserRepository implements Repository {}
+
+    public static class OrderRepository implements Repository {}
+
+    public static class Mailer {}
+
+    public static class Handler {
+        @Inject
+        private UserRepository users;
+
+        @Inject
+        @Qualifier("orders")
+        private Repository orders;
+
+        @Inject
+        private Supplier<Mailer> mailer;
+    }
+
+    private PoorMansIocContext context;
+    private final Handler handler = new Handler();
+
+    @Setup
+    public void setup() {
+        context = new PoorMansIocContext();
+        context.addBean(new UserRepository(), "users");
+        context.addBean(new OrderRepository(), "orders");
+        context.addBean(new Mailer(), "mailer");
+        for (int i = 0; i < 100; i++) {
+            context.addBean(new Object(), "other" + i);
+        }
+    }
+
+    @Benchmark
+    public Object injectInto() {
+        return context.injectInto(handler);
+    }
+
+    @Benchmark
+    public Object byHand() {
+        handler.users = context.getBeanByType(UserRepository.class);
+        handler.orders = context.getBeanByType(Repository.class, "orders");
+        handler.mailer = context.getProvider(Mailer.class);
+        return handler;
+    }
+}
@@ -0,0 +1,56 @@
+package com.github.jlgrock.poormansioc;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The cost of instrumentation on lookups.  With no listener installed, the results should match
+ * {@link GetBeanByTypeBenchmark}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ListenerOverheadBenchmark {
+
+    public static class UserService {}
+
+    @Param({"none", "noop", "metrics"})
+    private String listener;
+
+    private PoorMansIocContext context;
+
+    @Setup
+    public void setup() {
+        context = new PoorMansIocContext();
+        context.addBean(new UserService(), "userService");
+        if ("noop".equals(listener)) {
+            context.setListener(new ContextListener() { });
+        } else if ("metrics".equals(listener)) {
+            context.setListener(new ContextMetrics());
+        }
+    }
+
+    @Benchmark
+    public Object byName() {
+        return context.getBeanByName("userService");
+    }
+
+    @Benchmark
+    public Object byType() {
+        return context.getBeanByType(UserService.class);
+    }
+}
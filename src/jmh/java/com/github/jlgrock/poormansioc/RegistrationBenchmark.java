@@ -0,0 +1,100 @@
+package com.github.jlgrock.poormansioc;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Startup cost of registering a large number of beans that all share one interface, one at a time and in bulk, and of
+ * adding a configuration class to a context that already holds that many beans.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RegistrationBenchmark {
+
+    public interface Pet {}
+
+    public static class Cat implements Pet {}
+
+    public static class Owner {
+        public Owner(final Cat cat) {
+        }
+    }
+
+    public static class OwnerConfiguration {
+        public Cat ownersCat() {
+            return new Cat();
+        }
+
+        public Owner owner(@Qualifier("ownersCat") final Cat cat) {
+            return new Owner(cat);
+        }
+    }
+
+    /**
+     * A context already holding all of the beans, rebuilt before every invocation so that the configuration class
+     * can be added again.
+     */
+    @State(Scope.Thread)
+    public static class PopulatedContext {
+        private PoorMansIocContext context;
+
+        @Setup(Level.Invocation)
+        public void setup(final RegistrationBenchmark benchmark) {
+            context = new PoorMansIocContext();
+            context.addBeans(benchmark.beans);
+        }
+    }
+
+    @Param({"100", "10000", "100000"})
+    private int beanCount;
+
+    private Map<String, Object> beans;
+
+    @Setup
+    public void setup() {
+        beans = new LinkedHashMap<>();
+        for (int i = 0; i < beanCount; i++) {
+            beans.put("pet" + i, new Cat());
+        }
+    }
+
+    @Benchmark
+    public PoorMansIocContext addBean() {
+        PoorMansIocContext context = new PoorMansIocContext();
+        for (Map.Entry<String, Object> bean : beans.entrySet()) {
+            context.addBean(bean.getValue(), bean.getKey());
+        }
+        return context;
+    }
+
+    @Benchmark
+    public PoorMansIocContext addBeans() {
+        PoorMansIocContext context = new PoorMansIocContext();
+        context.addBeans(beans);
+        return context;
+    }
+
+    @Benchmark
+    public PoorMansIocContext addConfigurationClass(final PopulatedContext populated) {
+        populated.context.addConfigurationClass(OwnerConfiguration.class);
+        return populated.context;
+    }
+}
@@ -0,0 +1,84 @@
+package com.github.jlgrock.poormansioc;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reloading one configuration class in a context with many other beans, compared to clearing the context and
+ * building it again.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ReloadBenchmark {
+
+    public static class Template {}
+
+    public static class Renderer {
+        public Renderer(final Template template) {
+        }
+    }
+
+    public static class TemplateConfiguration {
+        public Template template() {
+            return new Template();
+        }
+    }
+
+    public static class RendererConfiguration {
+        public Renderer renderer(final Template template) {
+            return new Renderer(template);
+        }
+    }
+
+    @Param({"1000"})
+    private int beanCount;
+
+    private PoorMansIocContext context;
+    private Map<String, Object> otherBeans;
+
+    @Setup
+    public void setup() {
+        otherBeans = new LinkedHashMap<>();
+        for (int i = 0; i < beanCount; i++) {
+            otherBeans.put("bean" + i, new Object());
+        }
+        context = new PoorMansIocContext();
+        rebuild();
+    }
+
+    private void rebuild() {
+        context.addBeans(otherBeans);
+        context.addConfigurationClasses(Arrays.asList(TemplateConfiguration.class, RendererConfiguration.class));
+    }
+
+    @Benchmark
+    public Object reload() {
+        context.reloadConfigurationClass(TemplateConfiguration.class);
+        return context;
+    }
+
+    @Benchmark
+    public Object clearAndRebuild() {
+        context.clear();
+        rebuild();
+        return context;
+    }
+}
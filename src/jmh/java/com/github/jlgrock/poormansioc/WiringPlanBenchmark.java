@@ -0,0 +1,91 @@
+package com.github.jlgrock.poormansioc;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building a context from configuration classes from scratch, compared to replaying a saved wiring plan.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class WiringPlanBenchmark {
+
+    public interface Repository {}
+
+    public static class UserRepository implements Repository {}
+
+    public static class OrderRepository implements Repository {}
+
+    public static class UserService {
+        public UserService(final Repository repository) {
+        }
+    }
+
+    public static class RepositoryConfiguration {
+        public UserRepository userRepository() {
+            return new UserRepository();
+        }
+
+        public OrderRepository orderRepository() {
+            return new OrderRepository();
+        }
+    }
+
+    public static class ServiceConfiguration {
+        public UserService userService(final UserRepository repository) {
+            return new UserService(repository);
+        }
+
+        public UserService orderService(@Qualifier("orderRepository") final Repository repository) {
+            return new UserService(repository);
+        }
+    }
+
+    private final List<Class<?>> classes = Arrays.asList(ServiceConfiguration.class, RepositoryConfiguration.class);
+    private File planFile;
+
+    @Setup
+    public void setup() throws IOException {
+        planFile = File.createTempFile("wiring", ".plan");
+        planFile.delete();
+        new PoorMansIocContext().addConfigurationClasses(classes, planFile);
+    }
+
+    @TearDown
+    public void tearDown() {
+        planFile.delete();
+    }
+
+    @Benchmark
+    public PoorMansIocContext analyse() {
+        PoorMansIocContext context = new PoorMansIocContext();
+        context.addConfigurationClasses(classes);
+        return context;
+    }
+
+    @Benchmark
+    public PoorMansIocContext replay() {
+        PoorMansIocContext context = new PoorMansIocContext();
+        context.addConfigurationClasses(classes, planFile);
+        return context;
+    }
+}
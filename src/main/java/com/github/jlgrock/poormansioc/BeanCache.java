@@ -0,0 +1,140 @@
+package com.github.jlgrock.poormansioc;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps track of the {@link Evictable} beans of a context: how often they were found, how often they had to be
+ * created and how often they were dropped.  The {@link EvictionType#LEAST_RECENTLY_USED} beans that are held are
+ * limited to a budget of weight, and the least recently used of them are dropped whenever a bean is created that
+ * takes them over the budget.  A bean that is heavier than the whole budget is still held until the next bean is
+ * created.
+ */
+public final class BeanCache {
+    /**
+     * The budget of a new cache, which never drops anything
+     */
+    public static final long UNLIMITED = Long.MAX_VALUE;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final Set<EvictableNamedObject> held = new LinkedHashSet<>();
+    private long budget = UNLIMITED;
+    private long weight;
+
+    void hit() {
+        hits.increment();
+    }
+
+    void miss() {
+        misses.increment();
+    }
+
+    /**
+     * A soft or weak reference was found to have been cleared.
+     */
+    void collected() {
+        evictions.increment();
+    }
+
+    /**
+     * Holds a bean that was just created, dropping the least recently used beans if that goes over the budget.
+     */
+    synchronized void hold(final EvictableNamedObject bean) {
+        if (held.add(bean)) {
+            weight += bean.getWeight();
+        }
+        evictOverBudget(bean);
+    }
+
+    private void evictOverBudget(final EvictableNamedObject keep) {
+        while (weight > budget) {
+            EvictableNamedObject oldest = null;
+            for (EvictableNamedObject bean : held) {
+                if (bean != keep && (oldest == null || bean.getLastUsed() < oldest.getLastUsed())) {
+                    oldest = bean;
+                }
+            }
+            if (oldest == null) {
+                return;
+            }
+            held.remove(oldest);
+            weight -= oldest.getWeight();
+            oldest.evict();
+            evictions.increment();
+        }
+    }
+
+    /**
+     * Stops holding a bean that has been replaced.
+     */
+    synchronized void release(final EvictableNamedObject bean) {
+        if (held.remove(bean)) {
+            weight -= bean.getWeight();
+        }
+    }
+
+    /**
+     * Drops every bean, without counting them as evictions, when the context is closed.
+     */
+    void clear() {
+        List<EvictableNamedObject> dropped;
+        synchronized (this) {
+            dropped = new ArrayList<>(held);
+            held.clear();
+            weight = 0;
+        }
+        for (EvictableNamedObject bean : dropped) {
+            bean.evict();
+        }
+    }
+
+    /**
+     * @param budgetIn the total weight of the {@link EvictionType#LEAST_RECENTLY_USED} beans to hold.  Lowering the
+     * budget drops beans straight away.
+     */
+    public synchronized void setBudget(final long budgetIn) {
+        if (budgetIn < 0) {
+            throw new PoorMansIocRuntimeException("The budget of the bean cache can't be negative");
+        }
+        budget = budgetIn;
+        evictOverBudget(null);
+    }
+
+    public synchronized long getBudget() {
+        return budget;
+    }
+
+    /**
+     * @return the total weight of the {@link EvictionType#LEAST_RECENTLY_USED} beans that are held
+     */
+    public synchronized long getWeight() {
+        return weight;
+    }
+
+    /**
+     * @return how many times an evictable bean was retrieved without having to be created
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return how many times an evictable bean had to be created, the first time included
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return how many times an evictable bean was dropped.  Beans held through a soft or weak reference are only
+     * counted once they are found to be gone.
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+}
@@ -0,0 +1,290 @@
+package com.github.jlgrock.poormansioc;
+
+import java.lang.reflect.Type;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The two indexes that make up the contents of a context.  Readers never lock - they grab the current registry once
+ * and read from it.  Writers are serialized by the owning context and always publish a bean by type before publishing
+ * it by name, so a bean that can be found by name can always be found by type as well.  The entries stored by class
+ * are never modified once they are published, they are replaced instead.
+ * <p>
+ * Types that no bean was registered under can still be matched by assignability.  Those matches are found by scanning
+ * every bean, and are cached until the next bean is registered.  Generic types, such as `Cache<String, User>`, are
+ * matched against the beans of their raw class, and are cached until the next bean of the raw class is registered.
+ * <p>
+ * The registry also remembers the factory method of every bean that came from a configuration class, and the beans
+ * that each bean was passed to, so that reloading a configuration class knows which beans to create again.
+ */
+class BeanRegistry {
+    private final ConcurrentMap<String, NamedObject> mapByName;
+    private final ConcurrentMap<Class<?>, TypeEntry> mapByClass;
+    private final ConcurrentMap<Class<?>, AssignableMatch> assignableByClass = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Type, AssignableMatch> assignableByGenericType = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, FactoryMethod> factoryMethodsByName;
+    private final ConcurrentMap<String, Set<String>> dependentsByName;
+    private volatile TypeEntry allBeans;
+
+    BeanRegistry() {
+        this(new ConcurrentHashMap<>(), new ConcurrentHashMap<>(), new ConcurrentHashMap<>(), new ConcurrentHashMap<>());
+    }
+
+    private BeanRegistry(final ConcurrentMap<String, NamedObject> mapByNameIn,
+                         final ConcurrentMap<Class<?>, TypeEntry> mapByClassIn,
+                         final ConcurrentMap<String, FactoryMethod> factoryMethodsByNameIn,
+                         final ConcurrentMap<String, Set<String>> dependentsByNameIn) {
+        mapByName = mapByNameIn;
+        mapByClass = mapByClassIn;
+        factoryMethodsByName = factoryMethodsByNameIn;
+        dependentsByName = dependentsByNameIn;
+    }
+
+    NamedObject getByName(final String name) {
+        return mapByName.get(name);
+    }
+
+    TypeEntry getByClass(final Class<?> clazz) {
+        return mapByClass.get(clazz);
+    }
+
+    /**
+     * @return the beans that are instances of the class, or null if there are none.  Only meant for classes that no
+     * bean has been registered under.
+     */
+    TypeEntry getByAssignableClass(final Class<?> clazz) {
+        TypeEntry source = getAllBeans();
+        AssignableMatch match = assignableByClass.get(clazz);
+        if (match == null || match.source != source) {
+            match = new AssignableMatch(source, findAssignable(source, clazz));
+            assignableByClass.put(clazz, match);
+        }
+        return match.entry;
+    }
+
+    private TypeEntry findAssignable(final TypeEntry source, final Class<?> clazz) {
+        if (source == null) {
+            return null;
+        }
+        List<NamedObject> matches = new ArrayList<>();
+        for (NamedObject namedObject : source.getObjects()) {
+            if (clazz.isAssignableFrom(namedObject.getBeanClass())) {
+                matches.add(namedObject);
+            }
+        }
+        return matches.isEmpty() ? null : TypeEntry.appendAll(null, clazz, matches);
+    }
+
+    /**
+     * @param type the generic type to match
+     * @param source the beans of the raw class of the type, null if there are none
+     * @return the beans of the source that match the type along with its type arguments, or null if there are none
+     */
+    TypeEntry getByGenericType(final Type type, final TypeEntry source) {
+        AssignableMatch match = assignableByGenericType.get(type);
+        if (match == null || match.source != source) {
+            match = new AssignableMatch(source, findGeneric(source, type));
+            assignableByGenericType.put(type, match);
+        }
+        return match.entry;
+    }
+
+    private TypeEntry findGeneric(final TypeEntry source, final Type type) {
+        if (source == null) {
+            return null;
+        }
+        List<NamedObject> matches = new ArrayList<>();
+        for (NamedObject namedObject : source.getObjects()) {
+            if (isGenericMatch(type, namedObject)) {
+                matches.add(namedObject);
+            }
+        }
+        return matches.isEmpty() ? null : TypeEntry.appendAll(null, GenericTypes.rawType(type), matches);
+    }
+
+    /**
+     * The declared type of a bean is used when it is a subtype of the type asked for, otherwise the type arguments
+     * are worked out from the class of the bean.
+     */
+    private static boolean isGenericMatch(final Type type, final NamedObject namedObject) {
+        Type genericType = namedObject.getGenericType();
+        if (genericType != null && GenericTypes.rawType(type).isAssignableFrom(GenericTypes.rawType(genericType))) {
+            return GenericTypes.isAssignable(type, genericType);
+        }
+        return GenericTypes.isAssignable(type, namedObject.getBeanClass());
+    }
+
+    /**
+     * @return every bean in registration order, or null if there are none
+     */
+    TypeEntry getAllBeans() {
+        return allBeans;
+    }
+
+    boolean containsName(final String name) {
+        return getByName(name) != null;
+    }
+
+    /**
+     * @return a read-only view of the entry of every type that beans were registered under
+     */
+    Map<Class<?>, TypeEntry> getTypeEntries() {
+        return Collections.unmodifiableMap(mapByClass);
+    }
+
+    /**
+     * @return the factory method that the bean was created by, null if it wasn't created by one
+     */
+    FactoryMethod getFactoryMethod(final String name) {
+        return factoryMethodsByName.get(name);
+    }
+
+    void putFactoryMethod(final String name, final FactoryMethod factoryMethod) {
+        factoryMethodsByName.put(name, factoryMethod);
+    }
+
+    /**
+     * Records that a bean was passed to the factory method of another bean.
+     */
+    void addDependent(final String name, final String dependent) {
+        Set<String> dependents = dependentsByName.get(name);
+        if (dependents == null) {
+            dependents = dependentsByName.computeIfAbsent(name, key -> ConcurrentHashMap.newKeySet());
+        }
+        dependents.add(dependent);
+    }
+
+    /**
+     * @param names the beans to start from
+     * @return the beans along with every bean that was created from them, directly or indirectly
+     */
+    Set<String> withDependents(final Collection<String> names) {
+        Set<String> result = new LinkedHashSet<>(names);
+        Deque<String> pending = new ArrayDeque<>(names);
+        while (!pending.isEmpty()) {
+            for (String dependent : dependentsByName.getOrDefault(pending.pop(), Collections.<String>emptySet())) {
+                if (result.add(dependent)) {
+                    pending.push(dependent);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Copies the registry without some of its beans, for a new version of the registry to be built off to the side
+     * of this one.  The entries of the types that none of the beans were registered under are shared rather than
+     * copied, which is safe since this registry is never added to again once the copy is published.  Must only be
+     * called by the thread holding the context's write lock.
+     * @param names the beans to leave out
+     * @return the copy
+     */
+    BeanRegistry copyWithout(final Set<String> names) {
+        BeanRegistry copy = new BeanRegistry(new ConcurrentHashMap<>(mapByName), new ConcurrentHashMap<>(mapByClass),
+                new ConcurrentHashMap<>(factoryMethodsByName), new ConcurrentHashMap<>(dependentsByName));
+        Set<Class<?>> changedTypes = new HashSet<>();
+        for (String name : names) {
+            NamedObject namedObject = copy.mapByName.remove(name);
+            if (namedObject != null) {
+                changedTypes.addAll(namedObject.getTypes());
+            }
+            copy.factoryMethodsByName.remove(name);
+            copy.dependentsByName.remove(name);
+        }
+        for (Class<?> type : changedTypes) {
+            TypeEntry entry = mapByClass.get(type);
+            if (entry != null) {
+                TypeEntry remaining = without(entry, type, names);
+                if (remaining == null) {
+                    copy.mapByClass.remove(type);
+                } else {
+                    copy.mapByClass.put(type, remaining);
+                }
+            }
+        }
+        copy.allBeans = allBeans == null ? null : without(allBeans, Object.class, names);
+        for (Map.Entry<String, Set<String>> dependents : copy.dependentsByName.entrySet()) {
+            Set<String> copied = ConcurrentHashMap.newKeySet();
+            copied.addAll(dependents.getValue());
+            dependents.setValue(copied);
+        }
+        return copy;
+    }
+
+    /**
+     * Copies the factory methods and dependents recorded in another registry that this one doesn't have yet, such as
+     * those recorded in the previous version of the registry while this one was being built.  Must only be called by
+     * the thread holding the context's lock for these records.
+     * @param source the registry to copy the records from
+     * @param names the beans that were created again for this registry, whose own records this registry already has
+     */
+    void copyRecordsFrom(final BeanRegistry source, final Set<String> names) {
+        for (Map.Entry<String, FactoryMethod> factoryMethod : source.factoryMethodsByName.entrySet()) {
+            if (!names.contains(factoryMethod.getKey())) {
+                factoryMethodsByName.putIfAbsent(factoryMethod.getKey(), factoryMethod.getValue());
+            }
+        }
+        for (Map.Entry<String, Set<String>> dependents : source.dependentsByName.entrySet()) {
+            for (String dependent : dependents.getValue()) {
+                if (!names.contains(dependent)) {
+                    addDependent(dependents.getKey(), dependent);
+                }
+            }
+        }
+    }
+
+    private static TypeEntry without(final TypeEntry entry, final Class<?> type, final Set<String> names) {
+        List<NamedObject> kept = new ArrayList<>(entry.getObjects().size());
+        for (NamedObject namedObject : entry.getObjects()) {
+            if (!names.contains(namedObject.getName())) {
+                kept.add(namedObject);
+            }
+        }
+        return kept.isEmpty() ? null : TypeEntry.appendAll(null, type, kept);
+    }
+
+    /**
+     * Must only be called by the thread holding the context's write lock.
+     */
+    void putByName(final NamedObject namedObject) {
+        mapByName.put(namedObject.getName(), namedObject);
+        allBeans = TypeEntry.append(allBeans, Object.class, namedObject);
+    }
+
+    /**
+     * Must only be called by the thread holding the context's write lock.
+     */
+    void putAllByName(final Collection<NamedObject> namedObjects) {
+        for (NamedObject namedObject : namedObjects) {
+            mapByName.put(namedObject.getName(), namedObject);
+        }
+        allBeans = TypeEntry.appendAll(allBeans, Object.class, namedObjects);
+    }
+
+    /**
+     * Must only be called by the thread holding the context's write lock.
+     */
+    void putByClass(final Class<?> clazz, final TypeEntry entry) {
+        mapByClass.put(clazz, entry);
+    }
+
+    private static final class AssignableMatch {
+        private final TypeEntry source;
+        private final TypeEntry entry;
+
+        private AssignableMatch(final TypeEntry sourceIn, final TypeEntry entryIn) {
+            source = sourceIn;
+            entry = entryIn;
+        }
+    }
+}
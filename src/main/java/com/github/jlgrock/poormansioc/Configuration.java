@@ -0,0 +1,19 @@
+package com.github.jlgrock.poormansioc;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+import static java.lang.annotation.ElementType.TYPE;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+/**
+ * Marks a configuration class.  When the annotation processor is on the compile path, a {@link ContextInitializer}
+ * named after the class (for example {@code CatHouse_Initializer}) is generated that registers its beans with plain
+ * method calls instead of reflection.
+ */
+@Target(TYPE)
+@Retention(RUNTIME)
+@Documented
+public @interface Configuration {
+}
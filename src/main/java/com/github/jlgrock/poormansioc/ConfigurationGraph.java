@@ -0,0 +1,219 @@
+package com.github.jlgrock.poormansioc;
+
+import java.lang.reflect.Type;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * The dependencies between the beans of a set of configuration classes, derived from the declared parameter types
+ * and qualifiers of their factory methods.  A parameter depends on the bean whose name matches its qualifier or, when
+ * there is no qualifier, on every bean whose declared type, along with its type arguments, is assignable to the
+ * parameter type.  Parameters that no bean in the set satisfies are expected to already be in the context.
+ */
+final class ConfigurationGraph {
+    private final List<Node> nodes;
+
+    private ConfigurationGraph(final List<Node> nodesIn) {
+        nodes = nodesIn;
+    }
+
+    /**
+     * @param classes the configuration classes to build
+     * @return the graph of the classes
+     * @throws PoorMansIocRuntimeException if two beans have the same name or the dependencies are circular
+     */
+    static ConfigurationGraph of(final Collection<Class<?>> classes) {
+        Map<String, Node> nodesByName = new LinkedHashMap<>();
+        for (Class<?> clazz : classes) {
+            addClassNodes(nodesByName, clazz);
+        }
+        return build(nodesByName);
+    }
+
+    /**
+     * @param clazz the configuration class to build
+     * @param dependents the factory methods of other configuration classes that have to be called again, without
+     * creating their configuration classes again
+     * @return the graph of the class and the dependents
+     * @throws PoorMansIocRuntimeException if two beans have the same name or the dependencies are circular
+     */
+    static ConfigurationGraph of(final Class<?> clazz, final Collection<FactoryMethod> dependents) {
+        Map<String, Node> nodesByName = new LinkedHashMap<>();
+        addClassNodes(nodesByName, clazz);
+        for (FactoryMethod factoryMethod : dependents) {
+            addNode(nodesByName, new Node(ConfigurationPlan.of(factoryMethod.getMethod().getDeclaringClass()),
+                    factoryMethod, factoryMethod.getName(), factoryMethod.getReturnType()));
+        }
+        return build(nodesByName);
+    }
+
+    private static void addClassNodes(final Map<String, Node> nodesByName, final Class<?> clazz) {
+        ConfigurationPlan plan = ConfigurationPlan.of(clazz);
+        Node configNode = addNode(nodesByName, new Node(plan, null, clazz.getSimpleName(), clazz));
+        for (FactoryMethod factoryMethod : plan.getFactoryMethods()) {
+            Node node = addNode(nodesByName, new Node(plan, factoryMethod, factoryMethod.getName(),
+                    factoryMethod.getReturnType()));
+            node.dependencies.add(configNode);
+        }
+    }
+
+    private static ConfigurationGraph build(final Map<String, Node> nodesByName) {
+        for (Node node : nodesByName.values()) {
+            if (node.factoryMethod != null) {
+                addParameterDependencies(node, nodesByName);
+            }
+        }
+        return new ConfigurationGraph(sort(nodesByName.values()));
+    }
+
+    private static Node addNode(final Map<String, Node> nodesByName, final Node node) {
+        if (nodesByName.put(node.name, node) != null) {
+            throw new PoorMansIocRuntimeException("Class with name `" + node.name + "` already exists");
+        }
+        return node;
+    }
+
+    private static void addParameterDependencies(final Node node, final Map<String, Node> nodesByName) {
+        Type[] parameterTypes = node.factoryMethod.getGenericParameterTypes();
+        String[] qualifiers = node.factoryMethod.getQualifiers();
+        for (int i = 0; i < parameterTypes.length; i++) {
+            if (qualifiers[i] != null) {
+                Node producer = nodesByName.get(qualifiers[i]);
+                if (producer != null) {
+                    node.dependencies.add(producer);
+                }
+            } else {
+                for (Node producer : nodesByName.values()) {
+                    if (producer != node && GenericTypes.isAssignable(parameterTypes[i], producer.getGenericType())) {
+                        node.dependencies.add(producer);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Depth first topological sort, so that every node comes after all of its dependencies.
+     */
+    private static List<Node> sort(final Collection<Node> unsorted) {
+        List<Node> sorted = new ArrayList<>(unsorted.size());
+        Map<Node, Boolean> visited = new HashMap<>();
+        Deque<Node> path = new ArrayDeque<>();
+        for (Node node : unsorted) {
+            visit(node, visited, path, sorted);
+        }
+        return Collections.unmodifiableList(sorted);
+    }
+
+    private static void visit(final Node node, final Map<Node, Boolean> visited, final Deque<Node> path,
+                              final List<Node> sorted) {
+        Boolean done = visited.get(node);
+        if (Boolean.TRUE.equals(done)) {
+            return;
+        } else if (Boolean.FALSE.equals(done)) {
+            List<Node> cycle = new ArrayList<>(path);
+            Collections.reverse(cycle);
+            cycle = cycle.subList(cycle.indexOf(node), cycle.size());
+            throw new PoorMansIocRuntimeException("Circular dependency found: " + cycle.stream()
+                    .map(cycleNode -> "`" + cycleNode.name + "`")
+                    .collect(Collectors.joining(" -> ")) + " -> `" + node.name + "`");
+        }
+        visited.put(node, Boolean.FALSE);
+        path.push(node);
+        for (Node dependency : node.dependencies) {
+            visit(dependency, visited, path, sorted);
+        }
+        path.pop();
+        visited.put(node, Boolean.TRUE);
+        sorted.add(node);
+    }
+
+    /**
+     * @param sorted nodes that are already in dependency order, such as those of a {@link WiringPlan}
+     * @return the graph of the nodes, without analysing or sorting them again
+     */
+    static ConfigurationGraph restore(final List<Node> sorted) {
+        return new ConfigurationGraph(Collections.unmodifiableList(sorted));
+    }
+
+    /**
+     * @return every bean of the configuration classes, each after all of the beans it depends on
+     */
+    List<Node> getNodes() {
+        return nodes;
+    }
+
+    /**
+     * A bean to create - either the instance of a configuration class or the result of one of its factory methods.
+     */
+    static final class Node {
+        private final ConfigurationPlan plan;
+        private final FactoryMethod factoryMethod;
+        private final String name;
+        private final Class<?> type;
+        private final List<Node> dependencies = new ArrayList<>();
+        private String[] bindings;
+
+        Node(final ConfigurationPlan planIn, final FactoryMethod factoryMethodIn, final String nameIn,
+                     final Class<?> typeIn) {
+            plan = planIn;
+            factoryMethod = factoryMethodIn;
+            name = nameIn;
+            type = typeIn;
+        }
+
+        ConfigurationPlan getPlan() {
+            return plan;
+        }
+
+        /**
+         * @return the factory method that creates the bean, or null if the bean is the configuration class itself
+         */
+        FactoryMethod getFactoryMethod() {
+            return factoryMethod;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        Class<?> getType() {
+            return type;
+        }
+
+        /**
+         * @return the declared type of the bean along with its type arguments
+         */
+        Type getGenericType() {
+            return factoryMethod == null ? type : factoryMethod.getGenericReturnType();
+        }
+
+        /**
+         * @return the beans that have to be created first.  For a factory method, the first is always its
+         * configuration class.
+         */
+        List<Node> getDependencies() {
+            return dependencies;
+        }
+
+        /**
+         * @return the names of the beans to pass to the factory method, in parameter order, or null if the
+         * parameters have to be resolved by type
+         */
+        String[] getBindings() {
+            return bindings;
+        }
+
+        void setBindings(final String[] bindingsIn) {
+            bindings = bindingsIn;
+        }
+    }
+}
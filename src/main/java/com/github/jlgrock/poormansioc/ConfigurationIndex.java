@@ -0,0 +1,317 @@
+package com.github.jlgrock.poormansioc;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.stream.Stream;
+
+/**
+ * Finds the {@link Configuration} classes on the classpath.  The annotation processor writes the names of the
+ * classes it compiles to {@link #RESOURCE}, so finding them at runtime only means reading one small file per module.
+ * Only when no module has an index is the classpath itself scanned, and the result of the scan is kept in a cache
+ * file that is reused for as long as the classpath doesn't change.
+ */
+public final class ConfigurationIndex {
+    /**
+     * The resource that lists the configuration classes of a module, one binary class name per line
+     */
+    public static final String RESOURCE = "META-INF/poormansioc/configurations";
+
+    /**
+     * Appended to the simple names of a configuration class and the classes enclosing it, joined with underscores, to
+     * get the name of its generated {@link ContextInitializer}, which is in the same package
+     */
+    public static final String INITIALIZER_SUFFIX = "_Initializer";
+
+    /**
+     * The system property to set the location of the cache file of the classpath scan.  By default the file is kept
+     * in a `.poormansioc` directory under the home directory of the user, so that it can't be planted or replaced by
+     * another user.
+     */
+    public static final String SCAN_CACHE_PROPERTY = "poormansioc.scanCache";
+
+    private static final byte[] CONFIGURATION_DESCRIPTOR =
+            ("L" + Configuration.class.getName().replace('.', '/') + ";").getBytes(StandardCharsets.UTF_8);
+
+    private ConfigurationIndex() {
+    }
+
+    /**
+     * @param classLoader the class loader to find the index resources and load the classes with
+     * @return the configuration classes, from the indexes if there are any, otherwise from a scan of the classpath
+     */
+    static List<Class<?>> find(final ClassLoader classLoader) {
+        List<String> names = readIndexes(classLoader);
+        if (names.isEmpty()) {
+            String classPath = System.getProperty("java.class.path");
+            String cacheFile = System.getProperty(SCAN_CACHE_PROPERTY, new File(new File(System.getProperty("user.home"),
+                    ".poormansioc"), "scan-" + Integer.toHexString(classPath.hashCode()) + ".idx").getPath());
+            return scan(classPath, new File(cacheFile), classLoader);
+        }
+        return load(names, classLoader);
+    }
+
+    /**
+     * @param configurationClass the configuration class
+     * @return the initializer generated for the class, or null if it doesn't have one
+     */
+    static ContextInitializer findInitializer(final Class<?> configurationClass) {
+        StringBuilder name = new StringBuilder(configurationClass.getSimpleName()).append(INITIALIZER_SUFFIX);
+        for (Class<?> enclosing = configurationClass.getEnclosingClass(); enclosing != null;
+             enclosing = enclosing.getEnclosingClass()) {
+            name.insert(0, enclosing.getSimpleName() + "_");
+        }
+        String className = configurationClass.getName();
+        int lastDot = className.lastIndexOf('.');
+        if (lastDot >= 0) {
+            name.insert(0, className.substring(0, lastDot + 1));
+        }
+        Class<?> initializerClass;
+        try {
+            initializerClass = Class.forName(name.toString(), true, configurationClass.getClassLoader());
+        } catch (ClassNotFoundException e) {
+            return null;
+        }
+        if (!ContextInitializer.class.isAssignableFrom(initializerClass)) {
+            return null;
+        }
+        try {
+            return (ContextInitializer) initializerClass.getConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new PoorMansIocRuntimeException("Unable to create initializer `" + name + "`", e);
+        }
+    }
+
+    private static List<String> readIndexes(final ClassLoader classLoader) {
+        Set<String> names = new LinkedHashSet<>();
+        try {
+            Enumeration<URL> indexes = classLoader.getResources(RESOURCE);
+            while (indexes.hasMoreElements()) {
+                try (InputStream in = indexes.nextElement().openStream()) {
+                    names.addAll(lines(readFully(in)));
+                }
+            }
+        } catch (IOException e) {
+            throw new PoorMansIocRuntimeException("Unable to read `" + RESOURCE + "`", e);
+        }
+        return new ArrayList<>(names);
+    }
+
+    /**
+     * Scans every directory and jar of the class path for classes annotated with {@link Configuration}.  The names
+     * found are written to the cache file, along with a stamp of the class path, and read back from there instead of
+     * scanning for as long as the stamp matches.  A cache that names a class that can't be loaded is stale, and the
+     * class path is scanned again.
+     * @param classPath the class path to scan
+     * @param cacheFile where to keep the names that were found
+     * @param classLoader the class loader to load the classes with
+     * @return the configuration classes on the class path
+     */
+    static List<Class<?>> scan(final String classPath, final File cacheFile, final ClassLoader classLoader) {
+        List<File> entries = new ArrayList<>();
+        for (String entry : classPath.split(File.pathSeparator)) {
+            if (!entry.isEmpty()) {
+                entries.add(new File(entry));
+            }
+        }
+        String stamp = stamp(entries);
+        List<String> cached = readCache(cacheFile);
+        if (!cached.isEmpty() && cached.get(0).equals(stamp)) {
+            try {
+                return load(cached.subList(1, cached.size()), classLoader);
+            } catch (PoorMansIocRuntimeException e) {
+                // the cache doesn't match the class path after all
+            }
+        }
+        List<String> names = new ArrayList<>();
+        try {
+            for (File entry : entries) {
+                if (entry.isDirectory()) {
+                    scanDirectory(entry.toPath(), names);
+                } else if (entry.isFile()) {
+                    scanJar(entry, names);
+                }
+            }
+        } catch (IOException e) {
+            throw new PoorMansIocRuntimeException("Unable to scan the class path", e);
+        }
+        List<Class<?>> classes = load(names, classLoader);
+        List<String> lines = new ArrayList<>(classes.size() + 1);
+        lines.add(stamp);
+        for (Class<?> clazz : classes) {
+            lines.add(clazz.getName());
+        }
+        writeCache(cacheFile, lines);
+        return classes;
+    }
+
+    /**
+     * @return a stamp that changes when an entry of the class path is added, removed or modified
+     */
+    private static String stamp(final List<File> entries) {
+        long hash = 17;
+        for (File entry : entries) {
+            hash = hash * 31 + entry.getAbsolutePath().hashCode();
+            hash = hash * 31 + entry.length();
+            hash = hash * 31 + lastModified(entry);
+        }
+        return Long.toHexString(hash);
+    }
+
+    /**
+     * @return the latest modification of the entry, which for a directory includes every file underneath it
+     */
+    private static long lastModified(final File entry) {
+        if (!entry.isDirectory()) {
+            return entry.lastModified();
+        }
+        try (Stream<Path> files = Files.walk(entry.toPath())) {
+            return files.mapToLong(file -> file.toFile().lastModified()).max().orElse(0L);
+        } catch (IOException | UncheckedIOException e) {
+            return System.nanoTime();
+        }
+    }
+
+    private static void scanDirectory(final Path directory, final List<String> names) throws IOException {
+        List<Path> classFiles = new ArrayList<>();
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.filter(file -> file.toString().endsWith(".class")).forEach(classFiles::add);
+        }
+        for (Path classFile : classFiles) {
+            if (isConfiguration(Files.readAllBytes(classFile))) {
+                names.add(className(directory.relativize(classFile).toString().replace(File.separatorChar, '/')));
+            }
+        }
+    }
+
+    private static void scanJar(final File jar, final List<String> names) throws IOException {
+        try (JarFile jarFile = new JarFile(jar)) {
+            Enumeration<JarEntry> jarEntries = jarFile.entries();
+            while (jarEntries.hasMoreElements()) {
+                JarEntry jarEntry = jarEntries.nextElement();
+                if (jarEntry.getName().endsWith(".class") && !jarEntry.getName().startsWith("META-INF/")) {
+                    try (InputStream in = jarFile.getInputStream(jarEntry)) {
+                        if (isConfiguration(readFully(in))) {
+                            names.add(className(jarEntry.getName()));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * A cheap check on the bytes of the class file, so that only the classes that refer to the annotation at all
+     * have to be loaded.  Whether they are actually annotated is checked once they are loaded.
+     */
+    private static boolean isConfiguration(final byte[] classFile) {
+        outer:
+        for (int i = 0; i <= classFile.length - CONFIGURATION_DESCRIPTOR.length; i++) {
+            for (int j = 0; j < CONFIGURATION_DESCRIPTOR.length; j++) {
+                if (classFile[i + j] != CONFIGURATION_DESCRIPTOR[j]) {
+                    continue outer;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private static String className(final String path) {
+        return path.substring(0, path.length() - ".class".length()).replace('/', '.');
+    }
+
+    private static List<Class<?>> load(final List<String> names, final ClassLoader classLoader) {
+        List<Class<?>> classes = new ArrayList<>(names.size());
+        for (String name : names) {
+            Class<?> clazz;
+            try {
+                clazz = Class.forName(name, false, classLoader);
+            } catch (ClassNotFoundException | LinkageError e) {
+                throw new PoorMansIocRuntimeException("Unable to load configuration class `" + name + "`", e);
+            }
+            if (clazz.isAnnotationPresent(Configuration.class)) {
+                classes.add(clazz);
+            }
+        }
+        return classes;
+    }
+
+    private static List<String> readCache(final File cacheFile) {
+        if (!cacheFile.isFile()) {
+            return Collections.emptyList();
+        }
+        try {
+            return lines(Files.readAllBytes(cacheFile.toPath()));
+        } catch (IOException e) {
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * Writes the cache to a temporary file first, which replaces the cache in one step where the file system supports
+     * it, so that a concurrent reader never sees half of it.  The temporary file is never left behind.  A cache that
+     * can't be written only means that the next start scans again.
+     */
+    private static void writeCache(final File cacheFile, final List<String> lines) {
+        Path temp = null;
+        try {
+            File directory = cacheFile.getAbsoluteFile().getParentFile();
+            Files.createDirectories(directory.toPath());
+            temp = Files.createTempFile(directory.toPath(), cacheFile.getName(), ".tmp");
+            Files.write(temp, String.join("\n", lines).getBytes(StandardCharsets.UTF_8));
+            try {
+                Files.move(temp, cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            // the scan is repeated next time
+        } finally {
+            if (temp != null) {
+                try {
+                    Files.deleteIfExists(temp);
+                } catch (IOException e) {
+                    // a stray temporary file does no harm beyond taking up space
+                }
+            }
+        }
+    }
+
+    private static byte[] readFully(final InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(8192);
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    private static List<String> lines(final byte[] content) {
+        List<String> lines = new ArrayList<>();
+        for (String line : new String(content, StandardCharsets.UTF_8).split("\n")) {
+            String trimmed = line.trim();
+            if (!trimmed.isEmpty() && !trimmed.startsWith("#")) {
+                lines.add(trimmed);
+            }
+        }
+        return lines;
+    }
+}
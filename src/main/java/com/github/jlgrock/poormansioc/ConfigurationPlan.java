@@ -0,0 +1,84 @@
+package com.github.jlgrock.poormansioc;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * How to build the beans of a configuration class: its constructor and its factory methods.  A plan is only created
+ * once per class, so building several contexts from the same configuration classes only reflects over them once.
+ */
+final class ConfigurationPlan {
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    private static final ClassValue<ConfigurationPlan> PLANS = new ClassValue<ConfigurationPlan>() {
+        @Override
+        protected ConfigurationPlan computeValue(final Class<?> type) {
+            return new ConfigurationPlan(type);
+        }
+    };
+
+    private final Class<?> clazz;
+    private final MethodHandle constructor;
+    private final List<FactoryMethod> factoryMethods;
+
+    private ConfigurationPlan(final Class<?> clazzIn) {
+        clazz = clazzIn;
+        constructor = findConstructor(clazzIn);
+        List<FactoryMethod> methods = new ArrayList<>();
+        for (Method method : clazzIn.getMethods()) {
+            if (method.getDeclaringClass() == clazzIn) {
+                methods.add(new FactoryMethod(method));
+            }
+        }
+        factoryMethods = Collections.unmodifiableList(methods);
+    }
+
+    /**
+     * @param clazz the configuration class
+     * @return the plan for the class, created on first use
+     */
+    static ConfigurationPlan of(final Class<?> clazz) {
+        return PLANS.get(clazz);
+    }
+
+    private static MethodHandle findConstructor(final Class<?> clazz) {
+        if (clazz.getEnclosingClass() != null && !Modifier.isStatic(clazz.getModifiers())) {
+            throw new PoorMansIocRuntimeException("Can't instantiate class `" + clazz.getName() + "` because it is a non-static inner class");
+        }
+        try {
+            return LOOKUP.findConstructor(clazz, MethodType.methodType(void.class))
+                    .asType(MethodType.methodType(Object.class));
+        } catch (ReflectiveOperationException e) {
+            throw new PoorMansIocRuntimeException("Can't instantiate class `" + clazz.getName() + "`.  Make sure that it is public and " +
+                    "has a public constructor");
+        }
+    }
+
+    /**
+     * @return a new instance of the configuration class
+     */
+    Object instantiate() {
+        try {
+            return (Object) constructor.invokeExact();
+        } catch (Throwable t) {
+            throw new PoorMansIocRuntimeException("Can't instantiate class `" + clazz.getName() + "`", t);
+        }
+    }
+
+    Class<?> getConfigurationClass() {
+        return clazz;
+    }
+
+    /**
+     * @return the public methods declared by the configuration class, each of which creates one bean
+     */
+    List<FactoryMethod> getFactoryMethods() {
+        return factoryMethods;
+    }
+}
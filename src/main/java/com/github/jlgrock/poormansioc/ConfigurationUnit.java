@@ -0,0 +1,125 @@
+package com.github.jlgrock.poormansioc;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A configuration class that is added as a whole, through the {@link ContextInitializer} generated for it when there
+ * is one, and by reflection otherwise.  The beans of an initializer are registered in one go, so the classes are put
+ * in order by the types of the beans that each registers and the types that each looks up while it does.
+ */
+final class ConfigurationUnit {
+    private final Class<?> configurationClass;
+    private final ContextInitializer initializer;
+    private final Class<?>[] beanTypes;
+    private final Class<?>[] requiredTypes;
+
+    private ConfigurationUnit(final Class<?> configurationClassIn, final ContextInitializer initializerIn) {
+        configurationClass = configurationClassIn;
+        initializer = initializerIn;
+        if (initializerIn != null) {
+            beanTypes = initializerIn.getBeanTypes();
+            requiredTypes = initializerIn.getRequiredTypes();
+        } else {
+            Set<Class<?>> beans = new LinkedHashSet<>();
+            Set<Class<?>> required = new LinkedHashSet<>();
+            beans.add(configurationClassIn);
+            for (FactoryMethod factoryMethod : ConfigurationPlan.of(configurationClassIn).getFactoryMethods()) {
+                beans.add(factoryMethod.getReturnType());
+                if (factoryMethod.getScope() == ScopeType.SINGLETON && !factoryMethod.isLazy()
+                        && factoryMethod.getEviction() == null) {
+                    Collections.addAll(required, factoryMethod.getParameterTypes());
+                }
+            }
+            beanTypes = beans.toArray(new Class<?>[beans.size()]);
+            requiredTypes = required.toArray(new Class<?>[required.size()]);
+        }
+    }
+
+    /**
+     * @param classes the configuration classes, in the order to add them in where it doesn't matter
+     * @return the classes in the order to add them in, each after the classes whose beans it needs straight away, or
+     * null if none of them has an initializer, or they can't be put in order because they need each other's beans.
+     * Those classes are best added together by reflection, which orders them bean by bean.
+     */
+    static List<ConfigurationUnit> plan(final Collection<Class<?>> classes) {
+        List<ConfigurationUnit> units = new ArrayList<>(classes.size());
+        boolean initialized = false;
+        for (Class<?> clazz : classes) {
+            ContextInitializer initializer = ConfigurationIndex.findInitializer(clazz);
+            initialized |= initializer != null;
+            units.add(new ConfigurationUnit(clazz, initializer));
+        }
+        if (!initialized) {
+            return null;
+        }
+        List<ConfigurationUnit> sorted = new ArrayList<>(units.size());
+        Map<ConfigurationUnit, Boolean> visited = new HashMap<>();
+        for (ConfigurationUnit unit : units) {
+            if (!visit(unit, units, visited, sorted)) {
+                return null;
+            }
+        }
+        return sorted;
+    }
+
+    /**
+     * Depth first topological sort, as in {@link ConfigurationGraph}, but a cycle isn't an error.
+     * @return false if the unit is part of a cycle
+     */
+    private static boolean visit(final ConfigurationUnit unit, final List<ConfigurationUnit> units,
+                                 final Map<ConfigurationUnit, Boolean> visited, final List<ConfigurationUnit> sorted) {
+        Boolean done = visited.get(unit);
+        if (done != null) {
+            return done;
+        }
+        visited.put(unit, Boolean.FALSE);
+        for (ConfigurationUnit other : units) {
+            if (other != unit && unit.dependsOn(other) && !visit(other, units, visited, sorted)) {
+                return false;
+            }
+        }
+        visited.put(unit, Boolean.TRUE);
+        sorted.add(unit);
+        return true;
+    }
+
+    private boolean dependsOn(final ConfigurationUnit other) {
+        for (Class<?> required : requiredTypes) {
+            for (Class<?> beanType : other.beanTypes) {
+                if (required.isAssignableFrom(beanType)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param context the context to add the beans of the class to
+     */
+    void addTo(final PoorMansIocContext context) {
+        if (initializer != null) {
+            initializer.initialize(context);
+        } else {
+            context.addConfigurationClass(configurationClass);
+        }
+    }
+
+    Class<?> getConfigurationClass() {
+        return configurationClass;
+    }
+
+    /**
+     * @return the initializer generated for the class, or null if it is added by reflection
+     */
+    ContextInitializer getInitializer() {
+        return initializer;
+    }
+}
@@ -0,0 +1,33 @@
+package com.github.jlgrock.poormansioc;
+
+/**
+ * Registers beans with a context.  Implementations are generated for each {@link Configuration} class, and do the
+ * same thing as {@link PoorMansIocContext#addConfigurationClass(Class)} without using reflection.  The initializer of
+ * a class is named after it, with {@link ConfigurationIndex#INITIALIZER_SUFFIX} appended, which is how
+ * {@link PoorMansIocContext#addDiscoveredConfigurationClasses()} finds it.
+ */
+public interface ContextInitializer {
+    /**
+     * The beans that aren't created straight away are registered with factories that look up their parameters in the
+     * context they are given when the bean is created, such as a {@link PoorMansIocContext#freeze() frozen} copy,
+     * rather than in the context that they were registered with.
+     * @param context the context to register the beans with
+     */
+    void initialize(PoorMansIocContext context);
+
+    /**
+     * @return the classes of the beans that {@link #initialize(PoorMansIocContext)} registers, so that initializers
+     * that need them can be run afterwards
+     */
+    default Class<?>[] getBeanTypes() {
+        return new Class<?>[0];
+    }
+
+    /**
+     * @return the classes of the beans that {@link #initialize(PoorMansIocContext)} looks up while it runs, rather
+     * than when one of its beans is created later on
+     */
+    default Class<?>[] getRequiredTypes() {
+        return new Class<?>[0];
+    }
+}
@@ -0,0 +1,66 @@
+package com.github.jlgrock.poormansioc;
+
+/**
+ * Is told what a context spends its time on.  Install one with {@link PoorMansIocContext#setListener(ContextListener)};
+ * when none is installed the context doesn't measure anything.  Every method has an empty default, so implementations
+ * only need to override the events that they care about.  Methods can be called from several threads at once, and
+ * should be quick, as lookups wait for them.
+ */
+public interface ContextListener {
+    /**
+     * A factory method of a configuration class (or the factory of a bean added with
+     * {@link PoorMansIocContext#addBeanFactory(String, Class, ScopeType, java.util.function.Supplier)}) created a bean.
+     * @param name the name of the bean
+     * @param nanos how long the factory took, including resolving its parameters
+     */
+    default void beanCreated(final String name, final long nanos) {
+    }
+
+    /**
+     * A call that registers beans has finished.
+     * @param source what was registered - the name of a configuration class, or the name of the method called
+     * @param nanos how long the registration took
+     */
+    default void registered(final String source, final long nanos) {
+    }
+
+    /**
+     * A bean was retrieved by name.
+     * @param name the name of the bean
+     * @param nanos how long the lookup took
+     */
+    default void lookedUpByName(final String name, final long nanos) {
+    }
+
+    /**
+     * A bean was retrieved by type.
+     * @param type the type that was asked for
+     * @param qualifier the qualifier that was asked for, null if there was none
+     * @param nanos how long the lookup took
+     */
+    default void lookedUpByType(final Class<?> type, final String qualifier, final long nanos) {
+    }
+
+    /**
+     * Nothing matched a lookup.
+     * @param type the type that was asked for, null for a lookup by name
+     * @param name the name or qualifier that was asked for, null if there was none
+     */
+    default void lookupMissed(final Class<?> type, final String name) {
+    }
+
+    /**
+     * Several beans matched a lookup by type.
+     * @param type the type that was asked for
+     */
+    default void lookupAmbiguous(final Class<?> type) {
+    }
+
+    /**
+     * A bean was closed, because its context was closed or cleared.
+     * @param name the name of the bean
+     * @param nanos how long closing the bean took
+     */
+    default void beanClosed(final String name, final long nanos) {
+    }
+}
@@ -0,0 +1,229 @@
+package com.github.jlgrock.poormansioc;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A listener that keeps counts and timings of everything a context does, and reports them through slf4j or as a
+ * {@link Snapshot}.  Bean creation is logged at debug level as it happens.
+ */
+public class ContextMetrics implements ContextListener {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ContextMetrics.class);
+
+    private final ConcurrentMap<String, LongAdder> creationNanos = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, LongAdder> closingNanos = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Class<?>, LookupStats> lookupsByType = new ConcurrentHashMap<>();
+    private final LookupStats lookupsByName = new LookupStats();
+    private final LongAdder registrationNanos = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder ambiguities = new LongAdder();
+
+    @Override
+    public void beanCreated(final String name, final long nanos) {
+        creationNanos.computeIfAbsent(name, key -> new LongAdder()).add(nanos);
+        LOGGER.debug("Created bean `{}` in {} ms", name, nanos / 1_000_000.0);
+    }
+
+    @Override
+    public void beanClosed(final String name, final long nanos) {
+        closingNanos.computeIfAbsent(name, key -> new LongAdder()).add(nanos);
+        LOGGER.debug("Closed bean `{}` in {} ms", name, nanos / 1_000_000.0);
+    }
+
+    @Override
+    public void registered(final String source, final long nanos) {
+        registrationNanos.add(nanos);
+        LOGGER.debug("Registered `{}` in {} ms", source, nanos / 1_000_000.0);
+    }
+
+    @Override
+    public void lookedUpByName(final String name, final long nanos) {
+        lookupsByName.record(nanos);
+    }
+
+    @Override
+    public void lookedUpByType(final Class<?> type, final String qualifier, final long nanos) {
+        LookupStats stats = lookupsByType.get(type);
+        if (stats == null) {
+            stats = lookupsByType.computeIfAbsent(type, key -> new LookupStats());
+        }
+        stats.record(nanos);
+    }
+
+    @Override
+    public void lookupMissed(final Class<?> type, final String name) {
+        misses.increment();
+    }
+
+    @Override
+    public void lookupAmbiguous(final Class<?> type) {
+        ambiguities.increment();
+    }
+
+    /**
+     * @return the current values of every metric
+     */
+    public Snapshot snapshot() {
+        Map<String, Long> creations = new LinkedHashMap<>();
+        creationNanos.forEach((name, nanos) -> creations.put(name, nanos.sum()));
+        Map<String, Long> closings = new LinkedHashMap<>();
+        closingNanos.forEach((name, nanos) -> closings.put(name, nanos.sum()));
+        Map<Class<?>, LookupSnapshot> byType = new LinkedHashMap<>();
+        lookupsByType.forEach((type, stats) -> byType.put(type, stats.snapshot()));
+        return new Snapshot(creations, closings, byType, lookupsByName.snapshot(), registrationNanos.sum(), misses.sum(),
+                ambiguities.sum());
+    }
+
+    /**
+     * Logs a summary of the current values at info level.
+     */
+    public void log() {
+        Snapshot snapshot = snapshot();
+        LOGGER.info("Registration took {} ms, {} lookups by name, {} misses, {} ambiguous lookups",
+                snapshot.getRegistrationNanos() / 1_000_000.0, snapshot.getLookupsByName().getCount(),
+                snapshot.getMisses(), snapshot.getAmbiguities());
+        snapshot.getCreationNanos().forEach((name, nanos) ->
+                LOGGER.info("Bean `{}` took {} ms to create", name, nanos / 1_000_000.0));
+        snapshot.getClosingNanos().forEach((name, nanos) ->
+                LOGGER.info("Bean `{}` took {} ms to close", name, nanos / 1_000_000.0));
+        snapshot.getLookupsByType().forEach((type, lookups) ->
+                LOGGER.info("Type `{}` was looked up {} times, averaging {} ns", type.getName(), lookups.getCount(),
+                        lookups.getAverageNanos()));
+    }
+
+    /**
+     * A count and a latency histogram.  Bucket {@code i} of the histogram counts the lookups that took between
+     * {@code 2^i} and {@code 2^(i+1)} nanoseconds.
+     */
+    private static final class LookupStats {
+        private static final int BUCKETS = 64;
+
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAdder[] histogram = new LongAdder[BUCKETS];
+
+        private LookupStats() {
+            for (int i = 0; i < BUCKETS; i++) {
+                histogram[i] = new LongAdder();
+            }
+        }
+
+        private void record(final long nanos) {
+            totalNanos.add(nanos);
+            histogram[BUCKETS - 1 - Long.numberOfLeadingZeros(Math.max(nanos, 1))].increment();
+        }
+
+        private LookupSnapshot snapshot() {
+            long[] counts = new long[BUCKETS];
+            long count = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] = histogram[i].sum();
+                count += counts[i];
+            }
+            return new LookupSnapshot(count, totalNanos.sum(), counts);
+        }
+    }
+
+    /**
+     * The lookups of one type (or all lookups by name) at the time of a snapshot.
+     */
+    public static final class LookupSnapshot {
+        private final long count;
+        private final long totalNanos;
+        private final long[] histogram;
+
+        private LookupSnapshot(final long countIn, final long totalNanosIn, final long[] histogramIn) {
+            count = countIn;
+            totalNanos = totalNanosIn;
+            histogram = histogramIn;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getTotalNanos() {
+            return totalNanos;
+        }
+
+        public long getAverageNanos() {
+            return count == 0 ? 0 : totalNanos / count;
+        }
+
+        /**
+         * @return the number of lookups per bucket, where bucket {@code i} holds the lookups that took between
+         * {@code 2^i} and {@code 2^(i+1)} nanoseconds
+         */
+        public long[] getHistogram() {
+            return histogram.clone();
+        }
+    }
+
+    /**
+     * The values of every metric at one point in time.
+     */
+    public static final class Snapshot {
+        private final Map<String, Long> creationNanos;
+        private final Map<String, Long> closingNanos;
+        private final Map<Class<?>, LookupSnapshot> lookupsByType;
+        private final LookupSnapshot lookupsByName;
+        private final long registrationNanos;
+        private final long misses;
+        private final long ambiguities;
+
+        private Snapshot(final Map<String, Long> creationNanosIn, final Map<String, Long> closingNanosIn,
+                         final Map<Class<?>, LookupSnapshot> lookupsByTypeIn, final LookupSnapshot lookupsByNameIn,
+                         final long registrationNanosIn, final long missesIn, final long ambiguitiesIn) {
+            creationNanos = Collections.unmodifiableMap(creationNanosIn);
+            closingNanos = Collections.unmodifiableMap(closingNanosIn);
+            lookupsByType = Collections.unmodifiableMap(lookupsByTypeIn);
+            lookupsByName = lookupsByNameIn;
+            registrationNanos = registrationNanosIn;
+            misses = missesIn;
+            ambiguities = ambiguitiesIn;
+        }
+
+        /**
+         * @return the total time spent creating each bean, by bean name
+         */
+        public Map<String, Long> getCreationNanos() {
+            return creationNanos;
+        }
+
+        /**
+         * @return the total time spent closing each bean, by bean name
+         */
+        public Map<String, Long> getClosingNanos() {
+            return closingNanos;
+        }
+
+        public Map<Class<?>, LookupSnapshot> getLookupsByType() {
+            return lookupsByType;
+        }
+
+        public LookupSnapshot getLookupsByName() {
+            return lookupsByName;
+        }
+
+        /**
+         * @return the total time spent in calls that register beans
+         */
+        public long getRegistrationNanos() {
+            return registrationNanos;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        public long getAmbiguities() {
+            return ambiguities;
+        }
+    }
+}
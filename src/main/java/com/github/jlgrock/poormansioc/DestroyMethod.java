@@ -0,0 +1,23 @@
+package com.github.jlgrock.poormansioc;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+/**
+ * Names the public no-argument method to call on the bean of a factory method when the context is closed or
+ * cleared.  Without it, a bean is closed if it is {@link AutoCloseable}, and shut down if it is an
+ * {@link java.util.concurrent.ExecutorService}.
+ */
+@Target(METHOD)
+@Retention(RUNTIME)
+@Documented
+public @interface DestroyMethod {
+    /**
+     * @return the name of the method to call
+     */
+    String value();
+}
@@ -0,0 +1,31 @@
+package com.github.jlgrock.poormansioc;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+/**
+ * Marks a singleton of a configuration class as one that the context may drop, for large beans that can be built
+ * again, such as lookup tables or compiled templates.  The bean is created the first time it is retrieved, and
+ * created again by calling the method whenever it is retrieved after being dropped.  Since the context doesn't hold
+ * on to it, the bean is not closed when the context is closed.
+ */
+@Target(METHOD)
+@Retention(RUNTIME)
+@Documented
+public @interface Evictable {
+    /**
+     * How the context lets go of the bean
+     */
+    EvictionType value() default EvictionType.SOFT;
+
+    /**
+     * The share of the budget of the {@link BeanCache} that the bean takes up, only used by
+     * {@link EvictionType#LEAST_RECENTLY_USED}.  The unit is up to the application - a count of beans, or an estimate
+     * of their size in bytes.
+     */
+    long weight() default 1;
+}
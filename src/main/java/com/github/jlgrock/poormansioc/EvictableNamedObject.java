@@ -0,0 +1,132 @@
+package com.github.jlgrock.poormansioc;
+
+import java.lang.ref.Reference;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * A named object that the context may drop, and that is created again when it is next asked for.  The object is
+ * created at most once at a time, even when several threads ask for it at the same time.
+ */
+class EvictableNamedObject extends NamedObject {
+    private final Class<?> declaredClass;
+    private final Supplier<Object> factory;
+    private final EvictionType eviction;
+    private final long weight;
+    private final BeanCache cache;
+    private volatile Object object;
+    private volatile Reference<Object> reference;
+    private volatile long lastUsed;
+    private boolean creating;
+
+    /**
+     * @param nameIn the name associated with the object
+     * @param typesIn the types that the object is registered under
+     * @param declaredClassIn the class that the object is declared as
+     * @param factoryIn creates the object, each time it is needed again
+     * @param evictionIn how the object is dropped
+     * @param weightIn the share of the budget of the cache that the object takes up
+     * @param cacheIn counts hits, misses and evictions, and drops the least recently used objects
+     */
+    EvictableNamedObject(final String nameIn, final Set<Class<?>> typesIn, final Class<?> declaredClassIn,
+                         final Supplier<Object> factoryIn, final EvictionType evictionIn, final long weightIn,
+                         final BeanCache cacheIn) {
+        super(null, nameIn, typesIn);
+        declaredClass = declaredClassIn;
+        factory = factoryIn;
+        eviction = evictionIn;
+        weight = weightIn;
+        cache = cacheIn;
+    }
+
+    @Override
+    public Object getObject() {
+        Object result = peek();
+        if (result == null) {
+            synchronized (this) {
+                result = peek();
+                if (result == null) {
+                    return create();
+                }
+            }
+        }
+        used();
+        return result;
+    }
+
+    private Object peek() {
+        if (eviction == EvictionType.LEAST_RECENTLY_USED) {
+            return object;
+        }
+        Reference<Object> current = reference;
+        return current == null ? null : current.get();
+    }
+
+    private Object create() {
+        if (creating) {
+            throw new PoorMansIocRuntimeException("Circular dependency found while creating `" + getName() + "`");
+        }
+        cache.miss();
+        if (reference != null) {
+            cache.collected();
+        }
+        Object result;
+        creating = true;
+        try {
+            result = factory.get();
+        } finally {
+            creating = false;
+        }
+        lastUsed = System.nanoTime();
+        if (eviction == EvictionType.LEAST_RECENTLY_USED) {
+            object = result;
+            cache.hold(this);
+        } else {
+            reference = eviction == EvictionType.WEAK ? new WeakReference<>(result) : new SoftReference<>(result);
+        }
+        return result;
+    }
+
+    private void used() {
+        cache.hit();
+        if (eviction == EvictionType.LEAST_RECENTLY_USED) {
+            lastUsed = System.nanoTime();
+        }
+    }
+
+    /**
+     * Drops the object, so that it is created again when it is next asked for.  Called by the cache while it holds
+     * its own lock, so this must not wait for the lock of the object.
+     */
+    void evict() {
+        object = null;
+    }
+
+    long getWeight() {
+        return weight;
+    }
+
+    long getLastUsed() {
+        return lastUsed;
+    }
+
+    /**
+     * @return a copy that starts out without the object, and is held by the same cache
+     */
+    @Override
+    NamedObject withFactory(final Supplier<Object> factoryIn) {
+        return new EvictableNamedObject(getName(), getTypes(), declaredClass, factoryIn, eviction, weight, cache);
+    }
+
+    @Override
+    boolean isSingleInstance() {
+        return false;
+    }
+
+    @Override
+    Class<?> getBeanClass() {
+        return declaredClass;
+    }
+}
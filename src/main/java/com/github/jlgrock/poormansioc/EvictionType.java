@@ -0,0 +1,20 @@
+package com.github.jlgrock.poormansioc;
+
+/**
+ * How the context lets go of an {@link Evictable} bean.
+ */
+public enum EvictionType {
+    /**
+     * The bean is held through a soft reference, so it is only dropped when memory runs low.  This is the default.
+     */
+    SOFT,
+    /**
+     * The bean is held through a weak reference, so it is dropped as soon as nothing else uses it.
+     */
+    WEAK,
+    /**
+     * The bean is held until the weight of the beans of the {@link BeanCache} goes over its budget, at which point
+     * the least recently used beans are dropped first.
+     */
+    LEAST_RECENTLY_USED
+}
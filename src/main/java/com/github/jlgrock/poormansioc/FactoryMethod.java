@@ -0,0 +1,227 @@
+package com.github.jlgrock.poormansioc;
+
+import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.AnnotatedElement;
+import java.lang.reflect.Method;
+import java.lang.reflect.Parameter;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.WildcardType;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * A method of a configuration class that creates a bean.  The reflection on the method (its parameters, their
+ * qualifiers and access checks) is done once, and the method is called through a method handle rather than
+ * {@link Method#invoke(Object, Object...)}.
+ */
+final class FactoryMethod {
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    private final Method method;
+    private final Type genericReturnType;
+    private final Class<?> returnType;
+    private final boolean async;
+    private final Type[] genericParameterTypes;
+    private final Class<?>[] parameterTypes;
+    private final String[] qualifiers;
+    private final boolean[] providers;
+    private final MethodHandle invoker;
+    private final boolean lazy;
+    private final ScopeType scope;
+    private final int poolSize;
+    private final String destroyMethod;
+    private final EvictionType eviction;
+    private final long weight;
+
+    FactoryMethod(final Method methodIn) {
+        method = methodIn;
+        async = CompletableFuture.class.isAssignableFrom(methodIn.getReturnType());
+        genericReturnType = async ? typeArgument(methodIn.getGenericReturnType()) : methodIn.getGenericReturnType();
+        returnType = GenericTypes.rawType(genericReturnType);
+        lazy = methodIn.isAnnotationPresent(Lazy.class) || methodIn.getDeclaringClass().isAnnotationPresent(Lazy.class);
+        Scope scopeAnnotation = methodIn.getAnnotation(Scope.class);
+        scope = scopeAnnotation == null ? ScopeType.SINGLETON : scopeAnnotation.value();
+        poolSize = scopeAnnotation == null ? 0 : scopeAnnotation.poolSize();
+        DestroyMethod destroyAnnotation = methodIn.getAnnotation(DestroyMethod.class);
+        destroyMethod = destroyAnnotation == null ? null : destroyAnnotation.value();
+        Evictable evictable = methodIn.getAnnotation(Evictable.class);
+        eviction = evictable == null || scope != ScopeType.SINGLETON ? null : evictable.value();
+        weight = evictable == null ? 0L : evictable.weight();
+        Parameter[] parameters = methodIn.getParameters();
+        genericParameterTypes = new Type[parameters.length];
+        parameterTypes = new Class<?>[parameters.length];
+        qualifiers = new String[parameters.length];
+        providers = new boolean[parameters.length];
+        for (int i = 0; i < parameters.length; i++) {
+            providers[i] = isProvider(parameters[i].getType(), parameters[i].getParameterizedType());
+            genericParameterTypes[i] = providers[i] ? typeArgument(parameters[i].getParameterizedType())
+                    : parameters[i].getParameterizedType();
+            parameterTypes[i] = GenericTypes.rawType(genericParameterTypes[i]);
+            qualifiers[i] = determineQualificationName(parameters[i]);
+        }
+        try {
+            invoker = LOOKUP.unreflect(methodIn)
+                    .asType(MethodType.genericMethodType(parameters.length + 1))
+                    .asSpreader(Object[].class, parameters.length);
+        } catch (IllegalAccessException e) {
+            throw new PoorMansIocRuntimeException("Unable to access method `" + methodIn.getName() + "` on object `" +
+                    methodIn.getDeclaringClass().getName() + "`", e);
+        }
+    }
+
+    /**
+     * @return null if none has been found or it is a blank string, otherwise the name for use in the qualification
+     */
+    static String determineQualificationName(final AnnotatedElement element) {
+        String returnVal = null;
+        for (Annotation annotation : element.getAnnotations()) {
+            if (annotation instanceof Qualifier) {
+                returnVal = ((Qualifier) annotation).value();
+               break;
+            }
+        }
+        return returnVal;
+    }
+
+    /**
+     * @return true if the parameter or field is a `Supplier<Bean>`
+     */
+    static boolean isProvider(final Class<?> type, final Type genericType) {
+        return type == Supplier.class && genericType instanceof ParameterizedType;
+    }
+
+    /**
+     * @return the type argument of a type such as `Supplier<Bean>` or `CompletableFuture<Bean>`, or Object if it
+     * isn't known
+     */
+    static Type typeArgument(final Type type) {
+        if (!(type instanceof ParameterizedType)) {
+            return Object.class;
+        }
+        Type argument = ((ParameterizedType) type).getActualTypeArguments()[0];
+        return argument instanceof WildcardType ? ((WildcardType) argument).getUpperBounds()[0] : argument;
+    }
+
+    /**
+     * @param configObject the instance of the configuration class
+     * @param params the beans to pass as parameters, in the order of {@link #getParameterTypes()}
+     * @return the bean created by the method
+     * @throws PoorMansIocRuntimeException wrapping whatever the method threw, unless it is a
+     * PoorMansIocRuntimeException itself, such as from wiring the method's own beans.  Errors aren't wrapped.
+     */
+    Object invoke(final Object configObject, final Object[] params) {
+        try {
+            return (Object) invoker.invokeExact(configObject, params);
+        } catch (PoorMansIocRuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new PoorMansIocRuntimeException("Method `" + method.getName() + "` on object `" +
+                    method.getDeclaringClass().getName() + "` threw an exception", t);
+        }
+    }
+
+    Method getMethod() {
+        return method;
+    }
+
+    /**
+     * @return the name that the bean is registered under
+     */
+    String getName() {
+        return method.getName();
+    }
+
+    /**
+     * @return the class that the method declares it returns, or that its future completes with if it is async
+     */
+    Class<?> getReturnType() {
+        return returnType;
+    }
+
+    /**
+     * @return the type that the method declares it returns, along with its type arguments, or that its future
+     * completes with if it is async
+     */
+    Type getGenericReturnType() {
+        return genericReturnType;
+    }
+
+    /**
+     * @return true if the method returns a {@link CompletableFuture} of the bean rather than the bean itself
+     */
+    boolean isAsync() {
+        return async;
+    }
+
+    /**
+     * @return true if the bean should only be created when it is first retrieved
+     */
+    boolean isLazy() {
+        return lazy;
+    }
+
+    ScopeType getScope() {
+        return scope;
+    }
+
+    /**
+     * @return the maximum number of instances of a pooled bean
+     */
+    int getPoolSize() {
+        return poolSize;
+    }
+
+    /**
+     * @return the name of the method to call on the bean when the context is closed, null to close it the default way
+     */
+    String getDestroyMethod() {
+        return destroyMethod;
+    }
+
+    /**
+     * @return how the bean may be dropped, null if it is held for as long as the context is open
+     */
+    EvictionType getEviction() {
+        return eviction;
+    }
+
+    /**
+     * @return the share of the budget of the bean cache that an evictable bean takes up
+     */
+    long getWeight() {
+        return weight;
+    }
+
+    /**
+     * @return the class of each parameter, or of the bean it provides where it is a provider
+     */
+    Class<?>[] getParameterTypes() {
+        return parameterTypes;
+    }
+
+    /**
+     * @return the type of each parameter along with its type arguments, or of the bean it provides where it is a
+     * provider
+     */
+    Type[] getGenericParameterTypes() {
+        return genericParameterTypes;
+    }
+
+    /**
+     * @return true for each parameter that asks for a {@link Supplier} of the bean rather than the bean itself
+     */
+    boolean[] getProviders() {
+        return providers;
+    }
+
+    /**
+     * @return the qualifier of each parameter, null where there is none
+     */
+    String[] getQualifiers() {
+        return qualifiers;
+    }
+}
@@ -0,0 +1,131 @@
+package com.github.jlgrock.poormansioc;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+
+/**
+ * A registry that can no longer change, laid out for lookups rather than for registration.  Types and names are each
+ * kept in an open-addressed table with linear probing, sized to the beans of this registry alone, so a lookup is a
+ * hash and usually a single array access, and a type that was never registered costs nothing beyond its probe.
+ * Every entry is trimmed to the exact number of beans it holds.
+ */
+final class FrozenBeanRegistry extends BeanRegistry {
+    private final TypeEntry allBeans;
+    private final Class<?>[] types;
+    private final TypeEntry[] entriesByType;
+    private final int typeMask;
+    private final String[] names;
+    private final NamedObject[] objectsByName;
+    private final int mask;
+
+    /**
+     * @param source the registry to copy, which must not change while it is being copied
+     * @param copier returns the bean to put in place of each bean of the source, which is called once per bean
+     */
+    FrozenBeanRegistry(final BeanRegistry source, final UnaryOperator<NamedObject> copier) {
+        copyRecordsFrom(source, Collections.<String>emptySet());
+        Map<NamedObject, NamedObject> copies = new IdentityHashMap<>();
+        UnaryOperator<NamedObject> copy = namedObject -> copies.computeIfAbsent(namedObject, copier);
+        TypeEntry sourceBeans = source.getAllBeans();
+        allBeans = sourceBeans == null ? null : TypeEntry.copy(sourceBeans, copy);
+
+        Map<Class<?>, TypeEntry> typeEntries = source.getTypeEntries();
+        int typeCapacity = capacityFor(typeEntries.size());
+        types = new Class<?>[typeCapacity];
+        entriesByType = new TypeEntry[typeCapacity];
+        typeMask = typeCapacity - 1;
+        for (Map.Entry<Class<?>, TypeEntry> typeEntry : typeEntries.entrySet()) {
+            int index = typeSlot(typeEntry.getKey());
+            while (types[index] != null) {
+                index = (index + 1) & typeMask;
+            }
+            types[index] = typeEntry.getKey();
+            entriesByType[index] = TypeEntry.copy(typeEntry.getValue(), copy);
+        }
+
+        List<NamedObject> objects = allBeans == null ? Collections.<NamedObject>emptyList() : allBeans.getObjects();
+        int capacity = capacityFor(objects.size());
+        names = new String[capacity];
+        objectsByName = new NamedObject[capacity];
+        mask = capacity - 1;
+        for (NamedObject namedObject : objects) {
+            int index = slot(namedObject.getName());
+            while (names[index] != null) {
+                index = (index + 1) & mask;
+            }
+            names[index] = namedObject.getName();
+            objectsByName[index] = namedObject;
+        }
+    }
+
+    /**
+     * @return a power of two that leaves the table at most half full
+     */
+    private static int capacityFor(final int size) {
+        return Integer.highestOneBit(Math.max(size * 2, 2) - 1) << 1;
+    }
+
+    private int typeSlot(final Class<?> clazz) {
+        int hash = clazz.hashCode();
+        return (hash ^ (hash >>> 16)) & typeMask;
+    }
+
+    private int slot(final String name) {
+        int hash = name.hashCode();
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    @Override
+    NamedObject getByName(final String name) {
+        int index = slot(name);
+        String candidate;
+        while ((candidate = names[index]) != null) {
+            if (candidate.equals(name)) {
+                return objectsByName[index];
+            }
+            index = (index + 1) & mask;
+        }
+        return null;
+    }
+
+    @Override
+    TypeEntry getByClass(final Class<?> clazz) {
+        int index = typeSlot(clazz);
+        Class<?> candidate;
+        while ((candidate = types[index]) != null) {
+            if (candidate == clazz) {
+                return entriesByType[index];
+            }
+            index = (index + 1) & typeMask;
+        }
+        return null;
+    }
+
+    @Override
+    TypeEntry getAllBeans() {
+        return allBeans;
+    }
+
+    @Override
+    void putByName(final NamedObject namedObject) {
+        throw frozen();
+    }
+
+    @Override
+    void putAllByName(final Collection<NamedObject> namedObjects) {
+        throw frozen();
+    }
+
+    @Override
+    void putByClass(final Class<?> clazz, final TypeEntry entry) {
+        throw frozen();
+    }
+
+    private static PoorMansIocRuntimeException frozen() {
+        return new PoorMansIocRuntimeException("The context is frozen and can't be changed");
+    }
+}
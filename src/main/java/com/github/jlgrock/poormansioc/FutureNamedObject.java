@@ -0,0 +1,61 @@
+package com.github.jlgrock.poormansioc;
+
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * A named object that is created asynchronously, by a factory method returning a {@link CompletableFuture}.  The
+ * object is registered straight away, and asking for it waits until the future has completed.
+ */
+class FutureNamedObject extends NamedObject {
+    private final Class<?> declaredClass;
+    private final CompletableFuture<?> future;
+
+    /**
+     * @param nameIn the name associated with the object
+     * @param typesIn the types that the object is registered under
+     * @param declaredClassIn the class that the object is declared as
+     * @param futureIn completes with the object
+     */
+    FutureNamedObject(final String nameIn, final Set<Class<?>> typesIn, final Class<?> declaredClassIn,
+                      final CompletableFuture<?> futureIn) {
+        super(null, nameIn, typesIn);
+        declaredClass = declaredClassIn;
+        future = futureIn;
+    }
+
+    @Override
+    public Object getObject() {
+        return await(getName(), future);
+    }
+
+    /**
+     * @param name the name of the bean that the future creates
+     * @param future the future to wait for
+     * @return the bean that the future completed with
+     */
+    static Object await(final String name, final CompletableFuture<?> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            throw new PoorMansIocRuntimeException("Unable to create bean `" + name + "`", e.getCause());
+        } catch (CancellationException e) {
+            throw new PoorMansIocRuntimeException("The creation of bean `" + name + "` was cancelled", e);
+        }
+    }
+
+    @Override
+    Class<?> getBeanClass() {
+        Object result = future.getNow(null);
+        return result == null ? declaredClass : result.getClass();
+    }
+
+    /**
+     * @return the future that completes with the object
+     */
+    CompletableFuture<?> getFuture() {
+        return future;
+    }
+}
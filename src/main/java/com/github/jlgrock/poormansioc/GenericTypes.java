@@ -0,0 +1,187 @@
+package com.github.jlgrock.poormansioc;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.lang.reflect.WildcardType;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Assignability between generic types, for matching beans against a {@link TypeToken} or a parameterized factory
+ * method parameter.  The type arguments of a bean are worked out from its declared type and the generic supertypes
+ * of its class.  Where they can't be worked out, for example for an instance of a generic class that was added
+ * directly, the bean matches any type arguments.
+ */
+final class GenericTypes {
+    private GenericTypes() {
+    }
+
+    /**
+     * @return the class that the type erases to
+     */
+    static Class<?> rawType(final Type type) {
+        if (type instanceof Class) {
+            return (Class<?>) type;
+        } else if (type instanceof ParameterizedType) {
+            return (Class<?>) ((ParameterizedType) type).getRawType();
+        } else if (type instanceof GenericArrayType) {
+            return Array.newInstance(rawType(((GenericArrayType) type).getGenericComponentType()), 0).getClass();
+        } else if (type instanceof TypeVariable) {
+            return rawType(((TypeVariable<?>) type).getBounds()[0]);
+        } else if (type instanceof WildcardType) {
+            return rawType(((WildcardType) type).getUpperBounds()[0]);
+        }
+        return Object.class;
+    }
+
+    /**
+     * @param to the type asked for
+     * @param from the type of the bean
+     * @return true if a bean of the type can be used where the type asked for is expected
+     */
+    static boolean isAssignable(final Type to, final Type from) {
+        Class<?> rawTo = rawType(to);
+        if (!rawTo.isAssignableFrom(rawType(from))) {
+            return false;
+        }
+        if (!(to instanceof ParameterizedType)) {
+            return true;
+        }
+        Type supertype = supertype(from, rawTo);
+        if (!(supertype instanceof ParameterizedType)) {
+            return true;
+        }
+        Type[] toArguments = ((ParameterizedType) to).getActualTypeArguments();
+        Type[] fromArguments = ((ParameterizedType) supertype).getActualTypeArguments();
+        for (int i = 0; i < toArguments.length; i++) {
+            if (!argumentMatches(toArguments[i], fromArguments[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean argumentMatches(final Type to, final Type from) {
+        if (from instanceof TypeVariable) {
+            return true;
+        } else if (to instanceof WildcardType) {
+            for (Type upper : ((WildcardType) to).getUpperBounds()) {
+                if (!isAssignable(upper, from)) {
+                    return false;
+                }
+            }
+            for (Type lower : ((WildcardType) to).getLowerBounds()) {
+                if (!isAssignable(from, lower)) {
+                    return false;
+                }
+            }
+            return true;
+        } else if (to instanceof ParameterizedType && from instanceof ParameterizedType) {
+            return rawType(to) == rawType(from) && isAssignable(to, from);
+        }
+        return to.equals(from);
+    }
+
+    /**
+     * @return the type as the given supertype, with the type arguments filled in as far as they are known, or null if
+     * the supertype isn't one of its supertypes
+     */
+    static Type supertype(final Type type, final Class<?> target) {
+        Class<?> raw = rawType(type);
+        if (raw == target) {
+            return type;
+        }
+        Map<TypeVariable<?>, Type> bindings = new HashMap<>();
+        if (type instanceof ParameterizedType) {
+            TypeVariable<?>[] variables = raw.getTypeParameters();
+            Type[] arguments = ((ParameterizedType) type).getActualTypeArguments();
+            for (int i = 0; i < variables.length; i++) {
+                bindings.put(variables[i], arguments[i]);
+            }
+        }
+        Type superclass = raw.getGenericSuperclass();
+        if (superclass != null && target.isAssignableFrom(rawType(superclass))) {
+            return supertype(substitute(superclass, bindings), target);
+        }
+        for (Type superinterface : raw.getGenericInterfaces()) {
+            if (target.isAssignableFrom(rawType(superinterface))) {
+                return supertype(substitute(superinterface, bindings), target);
+            }
+        }
+        return null;
+    }
+
+    private static Type substitute(final Type type, final Map<TypeVariable<?>, Type> bindings) {
+        if (type instanceof TypeVariable) {
+            return bindings.getOrDefault(type, type);
+        } else if (type instanceof ParameterizedType) {
+            ParameterizedType parameterized = (ParameterizedType) type;
+            Type[] arguments = parameterized.getActualTypeArguments().clone();
+            for (int i = 0; i < arguments.length; i++) {
+                arguments[i] = substitute(arguments[i], bindings);
+            }
+            return new Parameterized((Class<?>) parameterized.getRawType(), parameterized.getOwnerType(), arguments);
+        }
+        return type;
+    }
+
+    /**
+     * A parameterized type with its type variables filled in.  Equal to any other {@link ParameterizedType} with the
+     * same raw type, owner and arguments.
+     */
+    private static final class Parameterized implements ParameterizedType {
+        private final Class<?> rawType;
+        private final Type ownerType;
+        private final Type[] arguments;
+
+        private Parameterized(final Class<?> rawTypeIn, final Type ownerTypeIn, final Type[] argumentsIn) {
+            rawType = rawTypeIn;
+            ownerType = ownerTypeIn;
+            arguments = argumentsIn;
+        }
+
+        @Override
+        public Type[] getActualTypeArguments() {
+            return arguments.clone();
+        }
+
+        @Override
+        public Type getRawType() {
+            return rawType;
+        }
+
+        @Override
+        public Type getOwnerType() {
+            return ownerType;
+        }
+
+        @Override
+        public boolean equals(final Object other) {
+            if (!(other instanceof ParameterizedType)) {
+                return false;
+            }
+            ParameterizedType that = (ParameterizedType) other;
+            return rawType.equals(that.getRawType()) && Objects.equals(ownerType, that.getOwnerType())
+                    && Arrays.equals(arguments, that.getActualTypeArguments());
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(arguments) ^ Objects.hashCode(ownerType) ^ rawType.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder name = new StringBuilder(rawType.getName()).append('<');
+            for (int i = 0; i < arguments.length; i++) {
+                name.append(i == 0 ? "" : ", ").append(arguments[i].getTypeName());
+            }
+            return name.append('>').toString();
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.github.jlgrock.poormansioc;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+import static java.lang.annotation.ElementType.CONSTRUCTOR;
+import static java.lang.annotation.ElementType.FIELD;
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+/**
+ * Marks a field, method or constructor of a class that isn't created by a configuration class to be filled in from
+ * the context by {@link PoorMansIocContext#injectInto(Object)} or {@link PoorMansIocContext#newInstance(Class)}.
+ * Beans are matched by type, along with its type arguments, and a {@link Qualifier} on the field or parameter picks
+ * the bean by name.  A `Supplier<Bean>` field or parameter gets a handle to the bean rather than the bean itself.
+ */
+@Target({FIELD, METHOD, CONSTRUCTOR})
+@Retention(RUNTIME)
+@Documented
+public @interface Inject {
+}
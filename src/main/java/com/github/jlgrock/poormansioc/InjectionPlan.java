@@ -0,0 +1,294 @@
+package com.github.jlgrock.poormansioc;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Parameter;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * How to wire a class that isn't created by a configuration class: its {@link Inject} fields and methods, and the
+ * constructor to create it with.  The reflection is done once per class, and fields are set through method handles
+ * rather than {@link Field#set(Object, Object)}.  Plans are shared by every context, so each context keeps which
+ * beans the injection points resolved to itself, and injecting into another instance doesn't look the beans up
+ * again.
+ */
+final class InjectionPlan {
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    private static final MethodType SETTER = MethodType.methodType(void.class, Object.class, Object.class);
+
+    private static final ClassValue<InjectionPlan> PLANS = new ClassValue<InjectionPlan>() {
+        @Override
+        protected InjectionPlan computeValue(final Class<?> type) {
+            return new InjectionPlan(type);
+        }
+    };
+
+    private final Class<?> clazz;
+    private final MethodHandle constructor;
+    private final Points constructorPoints;
+    private final Field[] fields;
+    private final MethodHandle[] fieldSetters;
+    private final FactoryMethod[] methods;
+    private final Points memberPoints;
+
+    private InjectionPlan(final Class<?> clazzIn) {
+        clazz = clazzIn;
+        Constructor<?> injectConstructor = findConstructor(clazzIn);
+        constructorPoints = new Points();
+        if (injectConstructor == null) {
+            constructor = null;
+        } else {
+            for (Parameter parameter : injectConstructor.getParameters()) {
+                constructorPoints.add(parameter.getType(), parameter.getParameterizedType(),
+                        FactoryMethod.determineQualificationName(parameter));
+            }
+            int count = injectConstructor.getParameterCount();
+            try {
+                injectConstructor.setAccessible(true);
+                constructor = LOOKUP.unreflectConstructor(injectConstructor)
+                        .asType(MethodType.genericMethodType(count))
+                        .asSpreader(Object[].class, count);
+            } catch (IllegalAccessException | RuntimeException e) {
+                throw new PoorMansIocRuntimeException("Unable to access the constructor of `" + clazzIn.getName() + "`", e);
+            }
+        }
+        memberPoints = new Points();
+        List<Class<?>> hierarchy = new ArrayList<>();
+        for (Class<?> type = clazzIn; type != null && type != Object.class; type = type.getSuperclass()) {
+            hierarchy.add(type);
+        }
+        // superclasses are injected first, but a method overridden by a subclass is only called once
+        Collections.reverse(hierarchy);
+        List<Field> injectFields = new ArrayList<>();
+        List<Method> injectMethods = new ArrayList<>();
+        Set<String> overridden = new HashSet<>();
+        for (int i = hierarchy.size() - 1; i >= 0; i--) {
+            for (Method method : hierarchy.get(i).getDeclaredMethods()) {
+                if (method.isAnnotationPresent(Inject.class) && !Modifier.isStatic(method.getModifiers())
+                        && overridden.add(method.getName() + Arrays.toString(method.getParameterTypes()))) {
+                    injectMethods.add(method);
+                }
+            }
+        }
+        Collections.reverse(injectMethods);
+        for (Class<?> type : hierarchy) {
+            for (Field field : type.getDeclaredFields()) {
+                if (field.isAnnotationPresent(Inject.class) && !Modifier.isStatic(field.getModifiers())) {
+                    injectFields.add(field);
+                }
+            }
+        }
+        fields = injectFields.toArray(new Field[injectFields.size()]);
+        fieldSetters = new MethodHandle[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            Field field = fields[i];
+            if (Modifier.isFinal(field.getModifiers())) {
+                throw new PoorMansIocRuntimeException("Unable to inject field `" + field.getName() + "` of `" +
+                        clazzIn.getName() + "` because it is final");
+            }
+            memberPoints.add(field.getType(), field.getGenericType(), FactoryMethod.determineQualificationName(field));
+            try {
+                field.setAccessible(true);
+                fieldSetters[i] = LOOKUP.unreflectSetter(field).asType(SETTER);
+            } catch (IllegalAccessException | RuntimeException e) {
+                throw new PoorMansIocRuntimeException("Unable to access field `" + field.getName() + "` of `" +
+                        clazzIn.getName() + "`", e);
+            }
+        }
+        methods = new FactoryMethod[injectMethods.size()];
+        for (int i = 0; i < methods.length; i++) {
+            Method method = injectMethods.get(i);
+            try {
+                method.setAccessible(true);
+            } catch (RuntimeException e) {
+                throw new PoorMansIocRuntimeException("Unable to access method `" + method.getName() + "` on object `" +
+                        clazzIn.getName() + "`", e);
+            }
+            methods[i] = new FactoryMethod(method);
+            for (Parameter parameter : method.getParameters()) {
+                memberPoints.add(parameter.getType(), parameter.getParameterizedType(),
+                        FactoryMethod.determineQualificationName(parameter));
+            }
+        }
+    }
+
+    /**
+     * @param clazz the class to wire
+     * @return the plan for the class, created on first use
+     */
+    static InjectionPlan of(final Class<?> clazz) {
+        return PLANS.get(clazz);
+    }
+
+    /**
+     * @return the constructor marked {@link Inject}, otherwise the constructor without parameters, or null if the class
+     * can't be instantiated
+     */
+    private static Constructor<?> findConstructor(final Class<?> clazz) {
+        if (Modifier.isAbstract(clazz.getModifiers()) || clazz.isInterface()
+                || (clazz.getEnclosingClass() != null && !Modifier.isStatic(clazz.getModifiers()))) {
+            return null;
+        }
+        Constructor<?> found = null;
+        for (Constructor<?> candidate : clazz.getDeclaredConstructors()) {
+            if (candidate.isAnnotationPresent(Inject.class)) {
+                if (found != null && found.isAnnotationPresent(Inject.class)) {
+                    throw new PoorMansIocRuntimeException("Class `" + clazz.getName() + "` has more than one constructor " +
+                            "marked `@Inject`");
+                }
+                found = candidate;
+            } else if (candidate.getParameterCount() == 0 && found == null) {
+                found = candidate;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * @param params the beans to pass to the constructor, in the order of {@link #getConstructorPoints()}
+     * @return a new instance of the class, before anything has been injected into it
+     */
+    Object instantiate(final Object[] params) {
+        if (constructor == null) {
+            throw new PoorMansIocRuntimeException("Can't instantiate class `" + clazz.getName() + "`.  Make sure that it " +
+                    "is a concrete class with a constructor marked `@Inject` or a constructor without parameters");
+        }
+        try {
+            return (Object) constructor.invokeExact(params);
+        } catch (Throwable t) {
+            throw new PoorMansIocRuntimeException("Can't instantiate class `" + clazz.getName() + "`", t);
+        }
+    }
+
+    /**
+     * Sets the fields, then calls the methods.
+     * @param instance the instance to inject into
+     * @param values the beans to inject, in the order of {@link #getMemberPoints()}
+     */
+    void inject(final Object instance, final Object[] values) {
+        for (int i = 0; i < fieldSetters.length; i++) {
+            try {
+                fieldSetters[i].invokeExact(instance, values[i]);
+            } catch (Throwable t) {
+                throw new PoorMansIocRuntimeException("Unable to inject field `" + fields[i].getName() + "` of `" +
+                        clazz.getName() + "`", t);
+            }
+        }
+        int next = fieldSetters.length;
+        for (FactoryMethod method : methods) {
+            int count = method.getParameterTypes().length;
+            method.invoke(instance, Arrays.copyOfRange(values, next, next + count));
+            next += count;
+        }
+    }
+
+    /**
+     * @return the parameters of the constructor
+     */
+    Points getConstructorPoints() {
+        return constructorPoints;
+    }
+
+    /**
+     * @return the fields, followed by the parameters of each method
+     */
+    Points getMemberPoints() {
+        return memberPoints;
+    }
+
+    /**
+     * The places that beans are injected into.  The beans they resolve to are kept by each context, keyed by the
+     * points.
+     */
+    static final class Points {
+        private final List<Type> types = new ArrayList<>();
+        private final List<String> qualifiers = new ArrayList<>();
+        private final List<Boolean> providers = new ArrayList<>();
+
+        private void add(final Class<?> type, final Type genericType, final String qualifier) {
+            boolean provider = FactoryMethod.isProvider(type, genericType);
+            types.add(provider ? FactoryMethod.typeArgument(genericType) : genericType);
+            qualifiers.add(qualifier);
+            providers.add(provider);
+        }
+
+        int size() {
+            return types.size();
+        }
+
+        /**
+         * @return the type of the bean, which is the type argument for a `Supplier<Bean>`
+         */
+        Type getType(final int index) {
+            return types.get(index);
+        }
+
+        String getQualifier(final int index) {
+            return qualifiers.get(index);
+        }
+
+        boolean isProvider(final int index) {
+            return providers.get(index);
+        }
+    }
+
+    /**
+     * The beans that injection points resolved to, along with the registries they were resolved from.  It only holds
+     * while none of those registries has changed.
+     */
+    static final class Binding {
+        private final Object[] stamps;
+        private final NamedObject[] beans;
+        private final Object[] values;
+        private final boolean fixed;
+
+        /**
+         * @param stampsIn the registries the beans were resolved from, each followed by the beans it held
+         * @param beansIn the beans that have to be asked for an instance on every injection, null where the value is
+         * fixed
+         * @param valuesIn the values that are injected every time, such as existing singletons and providers
+         */
+        Binding(final Object[] stampsIn, final NamedObject[] beansIn, final Object[] valuesIn) {
+            stamps = stampsIn;
+            beans = beansIn;
+            values = valuesIn;
+            boolean allFixed = true;
+            for (NamedObject bean : beansIn) {
+                allFixed &= bean == null;
+            }
+            fixed = allFixed;
+        }
+
+        Object[] getStamps() {
+            return stamps;
+        }
+
+        /**
+         * @return the values to inject, which must not be changed
+         */
+        Object[] getValues() {
+            if (fixed) {
+                return values;
+            }
+            Object[] current = values.clone();
+            for (int i = 0; i < beans.length; i++) {
+                if (beans[i] != null) {
+                    current[i] = beans[i].getObject();
+                }
+            }
+            return current;
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.github.jlgrock.poormansioc;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.ElementType.TYPE;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+/**
+ * Marks a method of a configuration class as lazy - the bean is not created when the configuration class is added,
+ * but the first time it is retrieved from the context.  The bean is registered under the declared return type of the
+ * method, since there is no instance to inspect yet.  When placed on the configuration class, every method of the
+ * class is lazy.
+ */
+@Target({METHOD, TYPE})
+@Retention(RUNTIME)
+@Documented
+public @interface Lazy {
+}
@@ -0,0 +1,62 @@
+package com.github.jlgrock.poormansioc;
+
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * A named object that isn't created until it is first asked for.  The object is created at most once, even when
+ * several threads ask for it at the same time.
+ */
+class LazyNamedObject extends NamedObject {
+    private final Class<?> declaredClass;
+    private final Supplier<Object> factory;
+    private volatile Object object;
+    private boolean creating;
+
+    /**
+     * @param nameIn the name associated with the object
+     * @param typesIn the types that the object is registered under
+     * @param declaredClassIn the class that the object is declared as
+     * @param factoryIn creates the object
+     */
+    LazyNamedObject(final String nameIn, final Set<Class<?>> typesIn, final Class<?> declaredClassIn,
+                    final Supplier<Object> factoryIn) {
+        super(null, nameIn, typesIn);
+        declaredClass = declaredClassIn;
+        factory = factoryIn;
+    }
+
+    @Override
+    public Object getObject() {
+        Object result = object;
+        if (result == null) {
+            synchronized (this) {
+                result = object;
+                if (result == null) {
+                    if (creating) {
+                        throw new PoorMansIocRuntimeException("Circular dependency found while creating `" + getName() + "`");
+                    }
+                    creating = true;
+                    try {
+                        result = factory.get();
+                    } finally {
+                        creating = false;
+                    }
+                    object = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    NamedObject withFactory(final Supplier<Object> factoryIn) {
+        return object != null ? this : new LazyNamedObject(getName(), getTypes(), declaredClass, factoryIn);
+    }
+
+    @Override
+    Class<?> getBeanClass() {
+        Object result = object;
+        return result == null ? declaredClass : result.getClass();
+    }
+}
@@ -0,0 +1,273 @@
+package com.github.jlgrock.poormansioc;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+
+/**
+ * The singletons of a context, in the order they were registered, along with the beans that each one was created
+ * from.  Closing the lifecycle closes every bean only once every bean created from it has been closed, and closes
+ * beans that don't depend on each other in parallel.
+ * <p>
+ * A factory method bean depends on its parameters and its configuration class.  Nothing is known about a bean that
+ * was added as an instance, so it is treated as depending on everything registered before it, and is closed in
+ * reverse order of registration.  Rather than on every earlier bean, it depends on the earlier beans that nothing
+ * depends on yet, which every other earlier bean is closed after anyway.  Beans added as instances are only kept
+ * if there is anything to close.
+ */
+final class Lifecycle {
+    private static final ThreadFactory DAEMON_THREADS = runnable -> {
+        Thread thread = new Thread(runnable, "poormansioc-close");
+        thread.setDaemon(true);
+        return thread;
+    };
+
+    private final Map<Object, Entry> entries = new IdentityHashMap<>();
+    private final List<Entry> ordered = new ArrayList<>();
+    private final Set<Entry> frontier = new LinkedHashSet<>();
+    private boolean closed;
+
+    /**
+     * @param name the name of the bean
+     * @param bean the bean
+     * @param destroyMethod the method to call to close the bean, null to close it the default way
+     * @param dependencies the objects that the bean was created from
+     */
+    void register(final String name, final Object bean, final String destroyMethod, final Object[] dependencies) {
+        List<Entry> dependencyEntries = new ArrayList<>();
+        synchronized (this) {
+            if (!closed) {
+                if (bean != null && !entries.containsKey(bean)) {
+                    for (Object dependency : dependencies) {
+                        Entry entry = dependency == null ? null : entries.get(dependency);
+                        if (entry != null) {
+                            dependencyEntries.add(entry);
+                        }
+                    }
+                    add(new Entry(name, bean, destroyMethod, dependencyEntries));
+                }
+                return;
+            }
+        }
+        closeLate(new Entry(name, bean, destroyMethod, dependencyEntries));
+    }
+
+    /**
+     * Registers a bean that was added as an instance, so depends on everything that was registered before it.
+     * @param name the name of the bean
+     * @param bean the bean
+     */
+    void register(final String name, final Object bean) {
+        register(name, bean, (String) null);
+    }
+
+    /**
+     * Registers a bean that nothing is known about, other than how to close it, so depends on everything that was
+     * registered before it.
+     * @param name the name of the bean
+     * @param bean the bean
+     * @param destroyMethod the method to call to close the bean, null to close it the default way
+     */
+    void register(final String name, final Object bean, final String destroyMethod) {
+        if (!isDestroyable(bean, destroyMethod)) {
+            return;
+        }
+        synchronized (this) {
+            if (!closed) {
+                if (!entries.containsKey(bean)) {
+                    add(new Entry(name, bean, destroyMethod, new ArrayList<>(frontier)));
+                }
+                return;
+            }
+        }
+        closeLate(new Entry(name, bean, destroyMethod, Collections.<Entry>emptyList()));
+    }
+
+    /**
+     * @return how many beans have been registered, so that the ones registered afterwards can be told apart
+     */
+    synchronized int size() {
+        return ordered.size();
+    }
+
+    /**
+     * Takes beans out of the lifecycle, so that they can be closed on their own while the rest stay open.
+     * @param names the names of the beans to take out
+     * @param from the position of the first bean to consider, in registration order
+     * @param to the position after the last bean to consider
+     * @return a lifecycle holding the beans that were taken out, in the same order
+     */
+    synchronized Lifecycle detach(final Set<String> names, final int from, final int to) {
+        Lifecycle detached = new Lifecycle();
+        List<Entry> kept = new ArrayList<>(ordered.size());
+        for (int i = 0; i < ordered.size(); i++) {
+            Entry entry = ordered.get(i);
+            if (i >= from && i < to && names.contains(entry.name)) {
+                entries.remove(entry.bean);
+                detached.add(entry);
+            } else {
+                kept.add(entry);
+            }
+        }
+        ordered.clear();
+        frontier.clear();
+        for (Entry entry : kept) {
+            add(entry);
+        }
+        return detached;
+    }
+
+    private static boolean isDestroyable(final Object bean, final String destroyMethod) {
+        return bean != null && (destroyMethod != null || bean instanceof AutoCloseable || bean instanceof ExecutorService);
+    }
+
+    private void add(final Entry entry) {
+        entries.put(entry.bean, entry);
+        ordered.add(entry);
+        frontier.removeAll(entry.dependencies);
+        frontier.add(entry);
+    }
+
+    /**
+     * A lazy or asynchronous bean can be created after its context was closed.  Such a bean is closed straight away
+     * rather than leaked.
+     */
+    private static void closeLate(final Entry entry) {
+        if (isDestroyable(entry.bean, entry.destroyMethod)) {
+            try {
+                entry.destroy();
+            } catch (Exception e) {
+                // nobody is left to report it to
+            }
+        }
+    }
+
+    /**
+     * Closes every bean, and stops accepting new ones.
+     * @param timeout how long to wait for each bean to close
+     * @param unit the unit of the timeout
+     * @param listener told how long each bean took to close, may be null
+     * @throws PoorMansIocRuntimeException once every bean has been closed, if any of them failed or timed out
+     */
+    void close(final long timeout, final TimeUnit unit, final ContextListener listener) {
+        List<Entry> toClose;
+        synchronized (this) {
+            closed = true;
+            toClose = new ArrayList<>(ordered);
+            ordered.clear();
+            frontier.clear();
+            entries.clear();
+        }
+        if (toClose.isEmpty()) {
+            return;
+        }
+        Map<Entry, List<Entry>> dependents = new IdentityHashMap<>();
+        for (Entry entry : toClose) {
+            for (Entry dependency : entry.dependencies) {
+                dependents.computeIfAbsent(dependency, key -> new ArrayList<>()).add(entry);
+            }
+        }
+        Map<String, Throwable> failures = Collections.synchronizedMap(new LinkedHashMap<>());
+        ExecutorService closer = Executors.newCachedThreadPool(DAEMON_THREADS);
+        ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(DAEMON_THREADS);
+        try {
+            Map<Entry, CompletableFuture<Void>> futures = new IdentityHashMap<>();
+            for (int i = toClose.size() - 1; i >= 0; i--) {
+                Entry entry = toClose.get(i);
+                List<Entry> closedFirst = dependents.getOrDefault(entry, Collections.<Entry>emptyList());
+                CompletableFuture<?>[] waitFor = new CompletableFuture<?>[closedFirst.size()];
+                for (int j = 0; j < waitFor.length; j++) {
+                    waitFor[j] = futures.get(closedFirst.get(j));
+                }
+                futures.put(entry, CompletableFuture.allOf(waitFor).thenCompose(ignored ->
+                        closeEntry(entry, closer, timer, timeout, unit, listener, failures)));
+            }
+            CompletableFuture.allOf(futures.values().toArray(new CompletableFuture<?>[futures.size()])).join();
+        } finally {
+            closer.shutdownNow();
+            timer.shutdownNow();
+        }
+        if (!failures.isEmpty()) {
+            PoorMansIocRuntimeException exception = new PoorMansIocRuntimeException("Unable to close " + failures.keySet()
+                    .stream().map(name -> "`" + name + "`").collect(Collectors.joining(", ")));
+            failures.values().forEach(exception::addSuppressed);
+            throw exception;
+        }
+    }
+
+    /**
+     * @return completes, always normally, once the bean has been closed, has failed to close or has timed out
+     */
+    private static CompletableFuture<Void> closeEntry(final Entry entry, final ExecutorService closer,
+                                                      final ScheduledExecutorService timer, final long timeout,
+                                                      final TimeUnit unit, final ContextListener listener,
+                                                      final Map<String, Throwable> failures) {
+        if (!isDestroyable(entry.bean, entry.destroyMethod)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        long start = System.nanoTime();
+        closer.execute(() -> {
+            try {
+                entry.destroy();
+                if (listener != null) {
+                    listener.beanClosed(entry.name, System.nanoTime() - start);
+                }
+            } catch (Exception e) {
+                failures.putIfAbsent(entry.name, e);
+            } finally {
+                done.complete(null);
+            }
+        });
+        timer.schedule(() -> {
+            if (!done.isDone()) {
+                failures.putIfAbsent(entry.name, new TimeoutException("Timed out closing bean `" + entry.name + "`"));
+                done.complete(null);
+            }
+        }, timeout, unit);
+        return done;
+    }
+
+    private static final class Entry {
+        private final String name;
+        private final Object bean;
+        private final String destroyMethod;
+        private final List<Entry> dependencies;
+
+        private Entry(final String nameIn, final Object beanIn, final String destroyMethodIn,
+                      final List<Entry> dependenciesIn) {
+            name = nameIn;
+            bean = beanIn;
+            destroyMethod = destroyMethodIn;
+            dependencies = dependenciesIn;
+        }
+
+        private void destroy() throws Exception {
+            if (destroyMethod != null) {
+                try {
+                    bean.getClass().getMethod(destroyMethod).invoke(bean);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                }
+            } else if (bean instanceof AutoCloseable) {
+                ((AutoCloseable) bean).close();
+            } else if (bean instanceof ExecutorService) {
+                ((ExecutorService) bean).shutdown();
+            }
+        }
+    }
+}
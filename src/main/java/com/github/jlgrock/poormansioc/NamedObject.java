@@ -1,26 +1,129 @@
 package com.github.jlgrock.poormansioc;
 
+import java.lang.reflect.Type;
+import java.util.Collections;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
 /**
  * An object with a name attached to it.
  */
 public class NamedObject {
     private final Object object;
     private final String name;
+    private final Set<Class<?>> types;
+    private Type genericType;
+    private String destroyMethod;
+    private Function<PoorMansIocContext, Object> recipe;
 
     /**
      * @param objectIn the object to store
      * @param nameIn the name associated with the object
      */
     public NamedObject(final Object objectIn, final String nameIn) {
+        this(objectIn, nameIn, Collections.emptySet());
+    }
+
+    /**
+     * @param objectIn the object to store
+     * @param nameIn the name associated with the object
+     * @param typesIn the types that the object is registered under
+     */
+    NamedObject(final Object objectIn, final String nameIn, final Set<Class<?>> typesIn) {
         object = objectIn;
         name = nameIn;
+        types = typesIn;
     }
 
     public Object getObject() {
         return object;
     }
 
+    /**
+     * @return the class of the object, or the most specific class known for it if it hasn't been created yet
+     */
+    Class<?> getBeanClass() {
+        return object.getClass();
+    }
+
     public String getName() {
         return name;
     }
+
+    /**
+     * @return true if {@link #getObject()} always returns the same instance
+     */
+    boolean isSingleInstance() {
+        return true;
+    }
+
+    /**
+     * @return true if the object has been registered under the type
+     */
+    boolean isRegisteredAs(final Class<?> clazz) {
+        return types.contains(clazz);
+    }
+
+    Set<Class<?>> getTypes() {
+        return types;
+    }
+
+    /**
+     * @return the type that the object was declared as, along with its type arguments, or null if only its class is
+     * known
+     */
+    Type getGenericType() {
+        return genericType;
+    }
+
+    /**
+     * Must only be called before the object is registered.
+     * @param genericTypeIn the type that the object was declared as, a plain class is ignored as it adds nothing to
+     * the class of the object
+     */
+    void setGenericType(final Type genericTypeIn) {
+        genericType = genericTypeIn instanceof Class ? null : genericTypeIn;
+    }
+
+    /**
+     * @return the method to call to close the instances of the object that the context holds, or null to close them
+     * the default way
+     */
+    String getDestroyMethod() {
+        return destroyMethod;
+    }
+
+    /**
+     * Must only be called before the object is registered.
+     * @param destroyMethodIn the method to call to close the instances of the object that the context holds
+     */
+    void setDestroyMethod(final String destroyMethodIn) {
+        destroyMethod = destroyMethodIn;
+    }
+
+    /**
+     * @return creates the object, resolving whatever it needs in the given context, or null if the object wasn't
+     * created by a context
+     */
+    Function<PoorMansIocContext, Object> getRecipe() {
+        return recipe;
+    }
+
+    /**
+     * Must only be called before the object is registered.
+     * @param recipeIn creates the object, resolving whatever it needs in the given context
+     */
+    void setRecipe(final Function<PoorMansIocContext, Object> recipeIn) {
+        recipe = recipeIn;
+    }
+
+    /**
+     * @param factoryIn creates the object from now on
+     * @return a copy of this object that creates its object with the factory, or this object if it won't create
+     * its object again
+     */
+    NamedObject withFactory(final Supplier<Object> factoryIn) {
+        return this;
+    }
 }
@@ -0,0 +1,38 @@
+package com.github.jlgrock.poormansioc;
+
+/**
+ * An instance borrowed from a pooled bean.  Closing it gives the instance back to the pool, so it is meant to be used
+ * with try-with-resources, and the instance must not be used after it has been closed.
+ * @param <T> the type of the bean
+ */
+public final class PooledBean<T> implements AutoCloseable {
+    private final PooledNamedObject pool;
+    private final T object;
+    private boolean closed;
+
+    PooledBean(final PooledNamedObject poolIn, final T objectIn) {
+        pool = poolIn;
+        object = objectIn;
+    }
+
+    /**
+     * @return the borrowed instance
+     */
+    public T get() {
+        if (closed) {
+            throw new PoorMansIocRuntimeException("Bean `" + pool.getName() + "` has already been given back");
+        }
+        return object;
+    }
+
+    /**
+     * Gives the instance back to the pool.  Closing more than once has no effect.
+     */
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            pool.giveBack(object);
+        }
+    }
+}
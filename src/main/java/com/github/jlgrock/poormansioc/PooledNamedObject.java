@@ -0,0 +1,113 @@
+package com.github.jlgrock.poormansioc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * A named object backed by a bounded pool of instances.  Instances are created on demand until the pool is full,
+ * after which borrowers wait for an instance to be given back.
+ */
+class PooledNamedObject extends NamedObject {
+    private final Class<?> declaredClass;
+    private final Supplier<Object> factory;
+    private final int poolSize;
+    private final BlockingQueue<Object> idle;
+    private final AtomicInteger created = new AtomicInteger();
+
+    /**
+     * @param nameIn the name associated with the object
+     * @param typesIn the types that the object is registered under
+     * @param declaredClassIn the class that the object is declared as
+     * @param factoryIn creates the instances of the pool
+     * @param poolSizeIn the maximum number of instances
+     */
+    PooledNamedObject(final String nameIn, final Set<Class<?>> typesIn, final Class<?> declaredClassIn,
+                      final Supplier<Object> factoryIn, final int poolSizeIn) {
+        super(null, nameIn, typesIn);
+        if (poolSizeIn < 1) {
+            throw new PoorMansIocRuntimeException("Pool size of `" + nameIn + "` must be at least 1");
+        }
+        declaredClass = declaredClassIn;
+        factory = factoryIn;
+        poolSize = poolSizeIn;
+        idle = new ArrayBlockingQueue<>(poolSizeIn);
+    }
+
+    /**
+     * Pooled objects can't be handed out without being given back, so they have to be borrowed instead.
+     */
+    @Override
+    public Object getObject() {
+        throw new PoorMansIocRuntimeException("Bean `" + getName() + "` is pooled and has to be borrowed");
+    }
+
+    /**
+     * @return an idle instance, a new instance if the pool isn't full yet, or otherwise the next instance to be
+     * given back
+     */
+    Object borrow() {
+        Object instance = idle.poll();
+        if (instance != null) {
+            return instance;
+        }
+        int count = created.get();
+        while (count < poolSize) {
+            if (created.compareAndSet(count, count + 1)) {
+                try {
+                    return factory.get();
+                } catch (RuntimeException | Error e) {
+                    created.decrementAndGet();
+                    throw e;
+                }
+            }
+            count = created.get();
+        }
+        try {
+            return idle.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new PoorMansIocRuntimeException("Interrupted while waiting to borrow `" + getName() + "`", e);
+        }
+    }
+
+    /**
+     * @param instance an instance previously returned by {@link #borrow()}
+     */
+    void giveBack(final Object instance) {
+        idle.offer(instance);
+    }
+
+    /**
+     * @return a copy with a pool of its own, of the same size
+     */
+    @Override
+    NamedObject withFactory(final Supplier<Object> factoryIn) {
+        return new PooledNamedObject(getName(), getTypes(), declaredClass, factoryIn, poolSize);
+    }
+
+    /**
+     * Takes the idle instances out of the pool, which makes room for new ones in their place.
+     * @return the instances that weren't borrowed
+     */
+    List<Object> drainIdle() {
+        List<Object> drained = new ArrayList<>();
+        idle.drainTo(drained);
+        created.addAndGet(-drained.size());
+        return drained;
+    }
+
+    @Override
+    boolean isSingleInstance() {
+        return false;
+    }
+
+    @Override
+    Class<?> getBeanClass() {
+        return declaredClass;
+    }
+}
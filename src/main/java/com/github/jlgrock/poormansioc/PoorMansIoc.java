@@ -1,7 +1,9 @@
 package com.github.jlgrock.poormansioc;
 
 /**
- * This does not build a dependency tree, so it is expected that your configuration beans are entered in order
+ * {@link PoorMansIocContext#addConfigurationClass(Class)} does not build a dependency tree, so it is expected that your
+ * configuration beans are entered in order.  Use {@link PoorMansIocContext#addConfigurationClasses(java.util.Collection)}
+ * to have the order worked out for you.
  */
 public class PoorMansIoc {
 
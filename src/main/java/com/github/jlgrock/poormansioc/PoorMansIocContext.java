@@ -1,35 +1,539 @@
 package com.github.jlgrock.poormansioc;
 
-import java.lang.annotation.Annotation;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
-import java.lang.reflect.Modifier;
-import java.lang.reflect.Parameter;
+import java.io.File;
+import java.lang.reflect.Type;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
  * A VERY simple implementation of an IoC context library.  This pales in comparison to Guice/Spring/CDI, but it is a
  * better than nothing and totally free for use in an environment that doesn't allow for either library (for some
  * stupid reason)
+ * <p>
+ * The context is safe to use from multiple threads.  Lookups never block and always read from a single registry, so
+ * they are never affected by a concurrent {@link #clear()}.  Registration is serialized, and a bean is published by
+ * type before it is published by name.
+ * <p>
+ * A context can have children, created with {@link #createChild()}.  A child starts out empty, and any lookup that
+ * the child can't satisfy falls through to its parent, so creating and dropping a child costs nothing in proportion to
+ * the beans of the parent.
+ * <p>
+ * Closing or clearing a context closes its singletons: those that are {@link AutoCloseable}, that are an
+ * {@link java.util.concurrent.ExecutorService}, or whose factory method names a {@link DestroyMethod}.  A bean is
+ * only closed once every bean that was created from it has been closed, and beans that don't depend on each other
+ * are closed in parallel.  The idle instances of {@link ScopeType#POOLED} beans and the instances of
+ * {@link ScopeType#THREAD} beans are closed as well, since the context is what holds on to them, and the threads
+ * that created them let go of them.  Borrowed instances, prototypes and {@link Evictable} beans are left to whoever
+ * retrieved them.
  */
-public class PoorMansIocContext {
-    private Map<String, Object> mapByName = new HashMap<>();
-    private Map<Class<?>, List<NamedObject>> mapByClass = new HashMap<>();
+public class PoorMansIocContext implements AutoCloseable {
+    /**
+     * How long {@link #close()} and {@link #clear()} wait for each bean to close, in seconds
+     */
+    public static final long DEFAULT_CLOSE_TIMEOUT_SECONDS = 30;
+
+    private final Object writeLock = new Object();
+    // guards the factory methods and dependents recorded in the registry, which are also recorded while beans are
+    // created, so without holding the write lock
+    private final Object recordLock = new Object();
+    private final PoorMansIocContext parent;
+    private final boolean frozen;
+    private final BeanCache beanCache;
+    // the beans that the injection points of each class resolved to in this context, since the points are shared by
+    // every context
+    private final Map<InjectionPlan.Points, InjectionPlan.Binding> injectionBindings = new ConcurrentHashMap<>();
+    private volatile BeanRegistry registry;
+    private volatile Lifecycle lifecycle;
+    private volatile ContextListener listener;
+    private volatile PoorMansIocContext reloadedInto;
+
+    /**
+     * Creates an empty context without a parent.
+     */
+    public PoorMansIocContext() {
+        this(null, new BeanRegistry(), new Lifecycle(), new BeanCache(), false);
+    }
+
+    private PoorMansIocContext(final PoorMansIocContext parentIn, final BeanRegistry registryIn,
+                               final Lifecycle lifecycleIn, final BeanCache beanCacheIn, final boolean frozenIn) {
+        parent = parentIn;
+        registry = registryIn;
+        lifecycle = lifecycleIn;
+        beanCache = beanCacheIn;
+        frozen = frozenIn;
+        listener = parentIn == null ? null : parentIn.listener;
+    }
+
+    /**
+     * Creates an empty context whose lookups fall through to this one when the child has no match.  The child can
+     * register beans with the same names as beans of this context, and those take precedence within the child.
+     * Nothing registered with the child is visible from this context.  The child starts out with the listener of this
+     * context.
+     * @return the new child context
+     */
+    public PoorMansIocContext createChild() {
+        return new PoorMansIocContext(this, new BeanRegistry(), new Lifecycle(), new BeanCache(), false);
+    }
+
+    /**
+     * Creates a read-only copy of this context, laid out for fast lookups rather than registration.  Use this once
+     * startup has finished and the beans won't change any more.  The copy has the same parent and listener as this
+     * context, and this context can still be changed without affecting the copy.  The singletons that already exist
+     * are shared with this context, which is the one that closes them, so closing the copy only closes the beans
+     * created by the copy itself.  Beans that are created on demand, such as {@link Lazy} beans that haven't been
+     * created yet and prototypes, are created by the copy from the beans of the copy.
+     * @return the frozen copy, or this context if it is already frozen
+     */
+    public PoorMansIocContext freeze() {
+        if (frozen) {
+            return this;
+        }
+        synchronized (writeLock) {
+            PoorMansIocContext frozenContext = new PoorMansIocContext(parent, null, new Lifecycle(), beanCache, true);
+            frozenContext.registry = new FrozenBeanRegistry(registry, frozenContext::rebind);
+            frozenContext.listener = listener;
+            return frozenContext;
+        }
+    }
+
+    /**
+     * @return the bean, or a copy of it that creates its object in this context if it creates its object on demand
+     */
+    private NamedObject rebind(final NamedObject namedObject) {
+        Function<PoorMansIocContext, Object> recipe = namedObject.getRecipe();
+        if (recipe == null) {
+            return namedObject;
+        }
+        NamedObject copy = namedObject.withFactory(bindFactory(namedObject.getName(), recipe));
+        if (copy != namedObject) {
+            copy.setGenericType(namedObject.getGenericType());
+            copy.setDestroyMethod(namedObject.getDestroyMethod());
+            copy.setRecipe(recipe);
+        }
+        return copy;
+    }
+
+    /**
+     * @return true if this context was created by {@link #freeze()} and can't be changed
+     */
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    private void checkNotFrozen() {
+        if (frozen) {
+            throw new PoorMansIocRuntimeException("The context is frozen and can't be changed");
+        }
+    }
+
+    /**
+     * @return the context that lookups fall through to, null if there is none
+     */
+    public PoorMansIocContext getParent() {
+        return parent;
+    }
+
+    /**
+     * Install a listener that is told about registration, bean creation and lookups.  Nothing is measured while no
+     * listener is installed.
+     * @param listenerIn the listener, or null to remove the current one
+     */
+    public void setListener(final ContextListener listenerIn) {
+        listener = listenerIn;
+    }
+
+    /**
+     * @return the installed listener, null if there is none
+     */
+    public ContextListener getListener() {
+        return listener;
+    }
+
+    /**
+     * @return the cache of the {@link Evictable} beans of this context, which is shared with its frozen copies but
+     * not with its children
+     */
+    public BeanCache getBeanCache() {
+        return beanCache;
+    }
 
     /**
      * Will add a configuration class.  how this works is that it will cycle through all of the methods and add
      * their objects to the context.  This assumes a no-argument constructor.  Unlike fancy IoC frameworks, this
      * doesn't build out a dependency tree - so make sure that your beans are in order.  Also, it will add EVERY
-     * method of a class, so make sure to keep your processing out of you bean configuration classes.
+     * method of a class, so make sure to keep your processing out of you bean configuration classes.  Methods
+     * marked {@link Lazy} are only called when their bean is first retrieved, and methods with a {@link Scope} other
+     * than {@link ScopeType#SINGLETON} are called whenever the scope needs a new instance.
+     * <p>
+     * A method can also return a {@link CompletableFuture} of its bean, which is then registered under the method
+     * name and the type of the future straight away.  Retrieving the bean, including as a parameter of a later
+     * method, waits for the future to complete.
      */
     public void addConfigurationClass(final Class clazz) {
-        Object configObject = instantiateConfigClass(clazz);
-        addBean(configObject, clazz.getSimpleName());
-        addConfigurationMethodBeans(clazz, configObject);
+        addConfigurationClassBeans(clazz);
+    }
+
+    /**
+     * Same as {@link #addConfigurationClass(Class)}, but also waits for the beans of methods returning a
+     * {@link CompletableFuture} to be created.
+     * @param clazz the configuration class to add
+     * @param timeout how long to wait for the beans
+     * @param unit the unit of the timeout
+     * @throws PoorMansIocRuntimeException if a bean can't be created or isn't created in time.  The beans stay in
+     * the context either way.
+     */
+    public void addConfigurationClass(final Class clazz, final long timeout, final TimeUnit unit) {
+        List<CompletableFuture<?>> futures = addConfigurationClassBeans(clazz);
+        try {
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[futures.size()])).get(timeout, unit);
+        } catch (TimeoutException e) {
+            throw new PoorMansIocRuntimeException("Timed out waiting for the beans of `" + clazz.getName() + "`", e);
+        } catch (ExecutionException e) {
+            throw new PoorMansIocRuntimeException("Unable to create the beans of `" + clazz.getName() + "`", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new PoorMansIocRuntimeException("Interrupted while waiting for the beans of `" + clazz.getName() + "`", e);
+        }
+    }
+
+    /**
+     * @return the futures of the beans that are created asynchronously
+     */
+    private List<CompletableFuture<?>> addConfigurationClassBeans(final Class clazz) {
+        checkNotFrozen();
+        long start = System.nanoTime();
+        List<CompletableFuture<?>> futures;
+        synchronized (writeLock) {
+            ConfigurationPlan plan = ConfigurationPlan.of(clazz);
+            Object configObject = plan.instantiate();
+            addBean(configObject, clazz.getSimpleName());
+            futures = addConfigurationMethodBeans(plan, configObject);
+        }
+        notifyRegistered(clazz.getName(), start);
+        return futures;
+    }
+
+    /**
+     * Replaces the beans of a configuration class that was added before, such as after its class has been reloaded.
+     * Only the factory methods of the class are called again, along with the factory methods of every bean that was
+     * created from one of its beans, directly or indirectly.  The new beans are built off to the side, and published
+     * along with the rest of the context as a new version of the registry in a single step, so lookups running at
+     * the same time never wait and see either the old beans or the new ones, never a mix of both.  The singletons
+     * that were replaced are closed once the new ones have been published.
+     * <p>
+     * Which beans were created from which is recorded as the factory methods are called, so the class and the
+     * classes that depend on it have to have been added by one of the `addConfigurationClass` methods rather than
+     * by a generated {@link ContextInitializer}.  Beans created from the class while it is being reloaded, such as lazy beans or prototypes retrieved by another
+     * thread, are created from the old beans.  Asynchronous beans are waited for before the new beans are published.
+     * @param clazz the configuration class, whose simple name is the name of the configuration class to replace
+     * @throws PoorMansIocRuntimeException if the class hasn't been added, or a bean can't be created.  The old beans
+     * stay in place when the reload fails.
+     */
+    public void reloadConfigurationClass(final Class<?> clazz) {
+        checkNotFrozen();
+        long start = System.nanoTime();
+        Lifecycle replaced;
+        synchronized (writeLock) {
+            BeanRegistry current = registry;
+            NamedObject configBean = current.getByName(clazz.getSimpleName());
+            if (configBean == null) {
+                throw new PoorMansIocRuntimeException("Configuration class `" + clazz.getName() + "` has not been added");
+            }
+            Class<?> oldClass = configBean.getObject().getClass();
+            List<String> oldNames = new ArrayList<>();
+            oldNames.add(configBean.getName());
+            for (FactoryMethod factoryMethod : ConfigurationPlan.of(oldClass).getFactoryMethods()) {
+                if (current.getFactoryMethod(factoryMethod.getName()) == factoryMethod) {
+                    oldNames.add(factoryMethod.getName());
+                }
+            }
+            Set<String> affected = current.withDependents(oldNames);
+            List<FactoryMethod> dependents = new ArrayList<>();
+            for (String name : affected) {
+                FactoryMethod factoryMethod = current.getFactoryMethod(name);
+                if (factoryMethod != null && factoryMethod.getMethod().getDeclaringClass() != oldClass) {
+                    dependents.add(factoryMethod);
+                }
+            }
+            ConfigurationGraph graph = ConfigurationGraph.of(clazz, dependents);
+
+            Lifecycle currentLifecycle = lifecycle;
+            int registered = currentLifecycle.size();
+            PoorMansIocContext staging = new PoorMansIocContext(parent, current.copyWithout(affected),
+                    currentLifecycle, beanCache, false);
+            staging.listener = listener;
+            try {
+                staging.addReloadedGraph(graph, clazz);
+            } catch (RuntimeException e) {
+                Set<String> created = new HashSet<>();
+                for (ConfigurationGraph.Node node : graph.getNodes()) {
+                    created.add(node.getName());
+                }
+                try {
+                    currentLifecycle.detach(created, registered, Integer.MAX_VALUE)
+                            .close(DEFAULT_CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS, listener);
+                } catch (PoorMansIocRuntimeException closeFailure) {
+                    e.addSuppressed(closeFailure);
+                }
+                throw e;
+            }
+            synchronized (recordLock) {
+                // beans created from the old registry while the new one was built, such as lazy beans, recorded
+                // their factory methods and dependents in the old one
+                staging.registry.copyRecordsFrom(current, affected);
+                registry = staging.registry;
+            }
+            staging.reloadedInto = this;
+            for (String name : affected) {
+                NamedObject old = current.getByName(name);
+                if (old instanceof EvictableNamedObject) {
+                    beanCache.release((EvictableNamedObject) old);
+                }
+            }
+            replaced = currentLifecycle.detach(affected, 0, registered);
+        }
+        notifyRegistered(clazz.getName(), start);
+        replaced.close(DEFAULT_CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS, listener);
+    }
+
+    /**
+     * Creates the beans of a reload, one after the other in dependency order, in this staging context.
+     */
+    private void addReloadedGraph(final ConfigurationGraph graph, final Class<?> clazz) {
+        Object configObject = null;
+        List<CompletableFuture<?>> futures = new ArrayList<>();
+        for (ConfigurationGraph.Node node : graph.getNodes()) {
+            FactoryMethod factoryMethod = node.getFactoryMethod();
+            if (factoryMethod == null) {
+                configObject = node.getPlan().instantiate();
+                addBean(configObject, node.getName());
+            } else {
+                Class<?> configClass = node.getPlan().getConfigurationClass();
+                NamedObject config = configClass == clazz ? null : findByName(configClass.getSimpleName());
+                if (configClass != clazz && config == null) {
+                    throw new PoorMansIocRuntimeException("Unable to find bean with name `" + configClass.getSimpleName() + "`");
+                }
+                CompletableFuture<?> future = addFactoryMethodBean(factoryMethod,
+                        config == null ? configObject : config.getObject(), null);
+                if (future != null) {
+                    futures.add(future);
+                }
+            }
+        }
+        try {
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[futures.size()])).join();
+        } catch (CompletionException e) {
+            throw new PoorMansIocRuntimeException("Unable to create the beans of `" + clazz.getName() + "`", e.getCause());
+        }
+    }
+
+    /**
+     * @return the context that the factories of this context have to resolve their parameters in - this context,
+     * unless it was the staging context of a reload that has since been published
+     */
+    private PoorMansIocContext owner() {
+        PoorMansIocContext target = reloadedInto;
+        return target == null ? this : target;
+    }
+
+    /**
+     * Will add several configuration classes at once.  Unlike {@link #addConfigurationClass(Class)}, the classes can
+     * be given in any order - a dependency graph is built from the parameter types and qualifiers of the factory
+     * methods, and each bean is created once the beans it depends on have been created.  Beans that don't depend on
+     * each other are created in parallel on the common {@link ForkJoinPool}.  A bean that depends on one returned as a
+     * {@link CompletableFuture} is only created once the future has completed, without blocking a thread meanwhile,
+     * and this only returns once every future has completed.
+     * @param classes the configuration classes to add
+     * @throws PoorMansIocRuntimeException if the dependencies are circular, a name is already taken or a bean can't
+     * be created.  Beans that were created before the failure stay in the context.
+     */
+    public void addConfigurationClasses(final Collection<Class<?>> classes) {
+        addConfigurationClasses(classes, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Same as {@link #addConfigurationClasses(Collection)}, creating the beans on the given executor.
+     * @param classes the configuration classes to add
+     * @param executor the executor to create the beans on
+     */
+    public void addConfigurationClasses(final Collection<Class<?>> classes, final Executor executor) {
+        checkNotFrozen();
+        long start = System.nanoTime();
+        addConfigurationGraph(ConfigurationGraph.of(classes), executor);
+        notifyRegistered("addConfigurationClasses", start);
+    }
+
+    /**
+     * Same as {@link #addConfigurationClasses(Collection)}, but the wiring that is worked out for the classes - the
+     * order to create the beans in and the bean that each factory method parameter is bound to - is saved to a
+     * file.  When the same classes are added again, for example on the next start, the wiring is read back from the
+     * file, so the classes aren't analysed again.  The file is ignored and replaced if any of the classes has changed
+     * since it was saved, or if a parameter would now resolve differently against the beans already in the context:
+     * a parameter bound outside of the classes must still resolve to the same bean, and a parameter bound within the
+     * classes must not have gained a match in the context that would make it ambiguous.
+     * @param classes the configuration classes to add, which have to be given in the same order each time
+     * @param planFile where to save the wiring to and read it from
+     */
+    public void addConfigurationClasses(final Collection<Class<?>> classes, final File planFile) {
+        checkNotFrozen();
+        long start = System.nanoTime();
+        List<Class<?>> classList = new ArrayList<>(classes);
+        ConfigurationGraph graph = WiringPlan.read(planFile, classList);
+        if (graph != null && isBound(graph)) {
+            addConfigurationGraph(graph, ForkJoinPool.commonPool());
+        } else {
+            graph = ConfigurationGraph.of(classList);
+            addConfigurationGraph(graph, ForkJoinPool.commonPool());
+            for (ConfigurationGraph.Node node : graph.getNodes()) {
+                if (node.getFactoryMethod() != null) {
+                    node.setBindings(bind(node.getFactoryMethod()));
+                }
+            }
+            WiringPlan.write(planFile, classList, graph);
+        }
+        notifyRegistered("addConfigurationClasses", start);
+    }
+
+    /**
+     * @return true if every parameter of the graph still resolves to the bean it was bound to.  The graph itself
+     * can't have changed, since the classes have the same checksums, so only the beans already in the context are
+     * resolved against.
+     */
+    private boolean isBound(final ConfigurationGraph graph) {
+        Set<String> names = new HashSet<>();
+        for (ConfigurationGraph.Node node : graph.getNodes()) {
+            names.add(node.getName());
+        }
+        for (ConfigurationGraph.Node node : graph.getNodes()) {
+            String[] bindings = node.getBindings();
+            if (bindings == null) {
+                continue;
+            }
+            Type[] parameterTypes = node.getFactoryMethod().getGenericParameterTypes();
+            String[] qualifiers = node.getFactoryMethod().getQualifiers();
+            for (int i = 0; i < bindings.length; i++) {
+                Type type = parameterTypes[i];
+                NamedObject existing;
+                try {
+                    existing = type instanceof Class ? findResolved((Class<?>) type, qualifiers[i])
+                            : findResolvedGeneric(type, qualifiers[i]);
+                } catch (PoorMansIocRuntimeException e) {
+                    return false;
+                }
+                boolean inGraph = names.contains(bindings[i]);
+                if (inGraph ? existing != null : existing == null || !existing.getName().equals(bindings[i])) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the names of the beans that the parameters of the factory method resolve to
+     */
+    private String[] bind(final FactoryMethod factoryMethod) {
+        Type[] parameterTypes = factoryMethod.getGenericParameterTypes();
+        String[] qualifiers = factoryMethod.getQualifiers();
+        String[] bindings = new String[parameterTypes.length];
+        for (int i = 0; i < parameterTypes.length; i++) {
+            bindings[i] = resolveGeneric(parameterTypes[i], qualifiers[i]).getName();
+        }
+        return bindings;
+    }
+
+    private void addConfigurationGraph(final ConfigurationGraph graph, final Executor executor) {
+        BeanRegistry current = registry;
+        for (ConfigurationGraph.Node node : graph.getNodes()) {
+            checkNameAvailable(current, node.getName());
+        }
+        Map<ConfigurationGraph.Node, CompletableFuture<Object>> futures = new HashMap<>();
+        for (ConfigurationGraph.Node node : graph.getNodes()) {
+            List<ConfigurationGraph.Node> dependencies = node.getDependencies();
+            CompletableFuture<?>[] dependencyFutures = new CompletableFuture<?>[dependencies.size()];
+            for (int i = 0; i < dependencyFutures.length; i++) {
+                dependencyFutures[i] = futures.get(dependencies.get(i));
+            }
+            CompletableFuture<Object> configFuture = dependencies.isEmpty() ? null : futures.get(dependencies.get(0));
+            futures.put(node, CompletableFuture.allOf(dependencyFutures)
+                    .thenComposeAsync(ignored -> createNodeBean(node, configFuture), executor));
+        }
+        try {
+            CompletableFuture.allOf(futures.values().toArray(new CompletableFuture<?>[futures.size()])).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof PoorMansIocRuntimeException) {
+                throw (PoorMansIocRuntimeException) e.getCause();
+            }
+            throw new PoorMansIocRuntimeException("Unable to add configuration classes", e.getCause());
+        }
+    }
+
+    /**
+     * Adds every {@link Configuration} class on the classpath, as {@link #addConfigurationClasses(Collection)} does.
+     * The classes are listed in the {@link ConfigurationIndex#RESOURCE} files that the annotation processor writes,
+     * and only if there are none is the classpath scanned.
+     * <p>
+     * A class that has a {@link ContextInitializer} generated for it is added by running the initializer, and only
+     * the classes without one are added by reflection.  The classes are added one after the other, each after those
+     * whose beans it needs while it is added.  If none of the classes has an initializer, or they need each other's
+     * beans, they are all added by reflection, which orders the beans one by one.
+     */
+    public void addDiscoveredConfigurationClasses() {
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        addDiscoveredConfigurationClasses(classLoader == null ? PoorMansIocContext.class.getClassLoader() : classLoader);
+    }
+
+    /**
+     * Same as {@link #addDiscoveredConfigurationClasses()}, finding the classes with the given class loader.
+     * @param classLoader the class loader to find the index resources and load the classes with
+     */
+    public void addDiscoveredConfigurationClasses(final ClassLoader classLoader) {
+        checkNotFrozen();
+        List<Class<?>> classes = ConfigurationIndex.find(classLoader);
+        List<ConfigurationUnit> units = ConfigurationUnit.plan(classes);
+        if (units == null) {
+            addConfigurationClasses(classes);
+            return;
+        }
+        for (ConfigurationUnit unit : units) {
+            unit.addTo(this);
+        }
+    }
+
+    /**
+     * @return completes with the instance of the configuration class for a configuration class node, and with null
+     * once the bean has been created otherwise
+     */
+    private CompletableFuture<Object> createNodeBean(final ConfigurationGraph.Node node,
+                                                     final CompletableFuture<Object> configFuture) {
+        FactoryMethod factoryMethod = node.getFactoryMethod();
+        if (factoryMethod == null) {
+            Object configObject = node.getPlan().instantiate();
+            addBean(configObject, node.getName());
+            return CompletableFuture.completedFuture(configObject);
+        }
+        CompletableFuture<?> future = addFactoryMethodBean(factoryMethod, configFuture.join(), node.getBindings());
+        return future == null ? CompletableFuture.completedFuture(null) : future.thenApply(bean -> null);
     }
 
     /**
@@ -38,90 +542,474 @@ public class PoorMansIocContext {
      * @param name the name of the bean to add
      */
     public void addBean(final Object instance, final String name) {
-        addMapByName(instance, name);
-        addMapByClass(instance.getClass(), instance, name);
-        for (Class classInterface : instance.getClass().getInterfaces()) {
-            addMapByClass(classInterface, instance, name);
+        addTypedBean(instance, name, null, null);
+    }
+
+    /**
+     * Add an individual Bean to the context along with the type it was declared as, so that it can be told apart
+     * from beans of the same class with different type arguments.
+     * @param instance the instance to add
+     * @param name the name of the bean to add
+     * @param type the type of the bean, along with its type arguments
+     * @see #getBeanByType(TypeToken, String)
+     */
+    public void addBean(final Object instance, final String name, final TypeToken<?> type) {
+        addTypedBean(instance, name, type.getType(), null);
+    }
+
+    /**
+     * Add an individual Bean to the context along with the type it was declared as and how to close it.
+     * @param instance the instance to add
+     * @param name the name of the bean to add
+     * @param type the type of the bean, along with its type arguments
+     * @param destroyMethod the method to call to close the bean, null to close it the default way
+     * @see DestroyMethod
+     */
+    public void addBean(final Object instance, final String name, final TypeToken<?> type,
+                        final String destroyMethod) {
+        addTypedBean(instance, name, type.getType(), destroyMethod);
+    }
+
+    /**
+     * @param genericType the type that the bean was declared as, null if only its class is known
+     */
+    private void addTypedBean(final Object instance, final String name, final Type genericType,
+                              final String destroyMethod) {
+        NamedObject namedObject = new NamedObject(instance, name, TypeHierarchy.supertypesOf(instance.getClass()));
+        namedObject.setGenericType(genericType);
+        addNamedObject(namedObject);
+        lifecycle.register(name, instance, destroyMethod);
+    }
+
+    private void addNamedObject(final NamedObject namedObject) {
+        checkNotFrozen();
+        synchronized (writeLock) {
+            BeanRegistry current = registry;
+            checkNameAvailable(current, namedObject.getName());
+            for (Class<?> type : namedObject.getTypes()) {
+                addMapByClass(current, type, namedObject);
+            }
+            current.putByName(namedObject);
+        }
+    }
+
+    /**
+     * Add several beans to the context at once.  Either all of the beans are added or, if any of the names is already
+     * taken, none of them are.  This is considerably faster than calling {@link #addBean(Object, String)} for each
+     * bean when registering a large number of beans.
+     * @param beans the instances to add, keyed by the name of each bean
+     */
+    public void addBeans(final Map<String, ?> beans) {
+        checkNotFrozen();
+        long start = System.nanoTime();
+        synchronized (writeLock) {
+            BeanRegistry current = registry;
+            for (String name : beans.keySet()) {
+                checkNameAvailable(current, name);
+            }
+            List<NamedObject> namedObjects = new ArrayList<>(beans.size());
+            Map<Class<?>, List<NamedObject>> objectsByType = new LinkedHashMap<>();
+            for (Map.Entry<String, ?> bean : beans.entrySet()) {
+                Object instance = bean.getValue();
+                NamedObject namedObject = new NamedObject(instance, bean.getKey(), TypeHierarchy.supertypesOf(instance.getClass()));
+                namedObjects.add(namedObject);
+                for (Class<?> type : namedObject.getTypes()) {
+                    objectsByType.computeIfAbsent(type, key -> new ArrayList<>()).add(namedObject);
+                }
+            }
+            for (Map.Entry<Class<?>, List<NamedObject>> objects : objectsByType.entrySet()) {
+                Class<?> type = objects.getKey();
+                current.putByClass(type, TypeEntry.appendAll(current.getByClass(type), type, objects.getValue()));
+            }
+            current.putAllByName(namedObjects);
+        }
+        Lifecycle current = lifecycle;
+        for (Map.Entry<String, ?> bean : beans.entrySet()) {
+            current.register(bean.getKey(), bean.getValue());
         }
+        notifyRegistered("addBeans", start);
     }
 
-    private void addMapByName(final Object instance, final String name) {
-        Object object = mapByName.get(name);
-        if (object != null) {
+    private void notifyRegistered(final String source, final long start) {
+        ContextListener current = listener;
+        if (current != null) {
+            current.registered(source, System.nanoTime() - start);
+        }
+    }
+
+    private void checkNameAvailable(final BeanRegistry current, final String name) {
+        if (current.containsName(name)) {
             throw new PoorMansIocRuntimeException("Class with name `" + name + "` already exists");
         }
-        mapByName.put(name, instance);
     }
 
-    private void addMapByClass(final Class clazz, final Object instance, final String name) {
-        List<NamedObject> objects = addObjectToMapList(mapByClass.get(clazz), instance, name);
-        mapByClass.put(clazz, objects);
+    private void addMapByClass(final BeanRegistry current, final Class<?> clazz, final NamedObject namedObject) {
+        current.putByClass(clazz, TypeEntry.append(current.getByClass(clazz), clazz, namedObject));
     }
 
-    private List<NamedObject> addObjectToMapList(final List<NamedObject> objects,
-                                                 final Object instance,
-                                                 final String name) {
-        List<NamedObject> newObjects = new ArrayList<>();
-        if (objects != null) {
-            newObjects.addAll(objects);
+    private List<CompletableFuture<?>> addConfigurationMethodBeans(final ConfigurationPlan plan,
+                                                                   final Object configObject) {
+        List<CompletableFuture<?>> futures = new ArrayList<>();
+        for (FactoryMethod factoryMethod : plan.getFactoryMethods()) {
+            CompletableFuture<?> future = addFactoryMethodBean(factoryMethod, configObject, null);
+            if (future != null) {
+                futures.add(future);
+            }
         }
-        NamedObject namedObject = new NamedObject(instance, name);
-        newObjects.add(namedObject);
-        return newObjects;
+        return futures;
     }
 
-    private Object instantiateConfigClass(final Class clazz) {
-        Object configObject = null;
-        try {
-            if (clazz.getEnclosingClass() != null && !Modifier.isStatic(clazz.getModifiers())) {
-                throw new PoorMansIocRuntimeException("Can't instantiate class `" + clazz.getName() + "` because it is a non-static inner class");
+    /**
+     * @param bindings the names of the beans to pass as parameters, or null to resolve them by type
+     * @return the future of the bean if it is created asynchronously, null otherwise
+     */
+    private CompletableFuture<?> addFactoryMethodBean(final FactoryMethod factoryMethod, final Object configObject,
+                                                      final String[] bindings) {
+        String name = factoryMethod.getName();
+        Function<PoorMansIocContext, Object> recipe = context ->
+                context.invokeFactoryMethod(factoryMethod, configObject, bindings);
+        Supplier<Object> invocation = () -> recipe.apply(owner());
+        CompletableFuture<?> future = null;
+        if (factoryMethod.getEviction() != null) {
+            addEvictableFactoryBean(name, factoryMethod.getReturnType(), factoryMethod.getGenericReturnType(),
+                    factoryMethod.getEviction(), factoryMethod.getWeight(), !factoryMethod.isAsync() ? recipe
+                            : context -> FutureNamedObject.await(name, (CompletableFuture<?>) recipe.apply(context)));
+        } else if (factoryMethod.getScope() == ScopeType.SINGLETON && !factoryMethod.isLazy()) {
+            if (factoryMethod.isAsync()) {
+                future = createAsync(name, invocation);
+                addFutureBean(name, factoryMethod.getReturnType(), factoryMethod.getGenericReturnType(), future);
+            } else {
+                addTypedBean(create(name, invocation), name, factoryMethod.getGenericReturnType(), null);
             }
-            configObject = clazz.newInstance();
-        } catch (IllegalAccessException | InstantiationException iae) {
-            throw new PoorMansIocRuntimeException("Can't instantiate class `" + clazz.getName() + "`.  Make sure that it is public and " +
-                    "has a public constructor");
+        } else if (factoryMethod.isAsync()) {
+            addFactoryBean(name, factoryMethod.getReturnType(), factoryMethod.getGenericReturnType(),
+                    factoryMethod.getScope(), factoryMethod.getPoolSize(), factoryMethod.getDestroyMethod(),
+                    context -> FutureNamedObject.await(name, (CompletableFuture<?>) recipe.apply(context)));
+        } else {
+            addFactoryBean(name, factoryMethod.getReturnType(), factoryMethod.getGenericReturnType(),
+                    factoryMethod.getScope(), factoryMethod.getPoolSize(), factoryMethod.getDestroyMethod(), recipe);
         }
-        return configObject;
+        synchronized (recordLock) {
+            registry.putFactoryMethod(name, factoryMethod);
+        }
+        return future;
     }
 
-    private void addConfigurationMethodBeans(final Class clazz, final Object configObject) {
-        Method[] methods = clazz.getMethods();
-        for (Method method : methods) {
-            if (method.getDeclaringClass() == clazz) {
-                Object beanObject;
-                Object[] params = createListOfParameters(method).toArray();
-                try {
-                    beanObject = method.invoke(configObject, params);
-                } catch (IllegalAccessException | InvocationTargetException e) {
-                    throw new PoorMansIocRuntimeException("Unable to access method `" + method.getName() + "` on object `" + clazz.getName() + "`", e);
-                }
-                addBean(beanObject, method.getName());
+    /**
+     * Calls the factory method and, for a singleton that isn't evictable, registers its bean with the lifecycle along
+     * with the beans it was created from.
+     */
+    private Object invokeFactoryMethod(final FactoryMethod factoryMethod, final Object configObject,
+                                       final String[] bindings) {
+        Object[] params = createListOfParameters(factoryMethod, bindings);
+        Object bean = factoryMethod.invoke(configObject, params);
+        if (factoryMethod.getScope() == ScopeType.SINGLETON && factoryMethod.getEviction() == null) {
+            Lifecycle current = lifecycle;
+            Object[] dependencies = Arrays.copyOf(params, params.length + 1);
+            dependencies[params.length] = configObject;
+            if (!factoryMethod.isAsync()) {
+                current.register(factoryMethod.getName(), bean, factoryMethod.getDestroyMethod(), dependencies);
+            } else if (bean != null) {
+                ((CompletableFuture<?>) bean).thenAccept(result -> current.register(factoryMethod.getName(), result,
+                        factoryMethod.getDestroyMethod(), dependencies));
             }
         }
+        return bean;
+    }
+
+    /**
+     * Add a bean that is still being created.  The bean is registered straight away, and retrieving it waits for
+     * the future to complete.
+     * @param name the name of the bean to add
+     * @param declaredClass the class that the bean is registered under, along with its supertypes
+     * @param future completes with the bean
+     * @param <T> the type of the bean
+     */
+    public <T> void addAsyncBean(final String name, final Class<T> declaredClass,
+                                 final CompletableFuture<? extends T> future) {
+        addFutureBean(name, declaredClass, null, future);
+        Lifecycle current = lifecycle;
+        future.thenAccept(bean -> current.register(name, bean));
     }
 
-    private List<Object> createListOfParameters(final Method method) {
-        List<Object> list = new ArrayList<>();
-        Parameter[] parameters = method.getParameters();
+    /**
+     * Add a bean of a type along with its type arguments that is still being created.
+     * @param name the name of the bean to add
+     * @param type the type of the bean, along with its type arguments
+     * @param future completes with the bean
+     * @param <T> the type of the bean
+     * @see #addAsyncBean(String, Class, CompletableFuture)
+     */
+    public <T> void addAsyncBean(final String name, final TypeToken<T> type,
+                                 final CompletableFuture<? extends T> future) {
+        addAsyncBean(name, type, null, future);
+    }
 
-        for (Parameter parameter : parameters) {
-            list.add(getBeanByType(parameter.getType(), determineQualificationName(parameter)));
+    /**
+     * Add a bean of a type along with its type arguments that is still being created, along with how to close it.
+     * @param name the name of the bean to add
+     * @param type the type of the bean, along with its type arguments
+     * @param destroyMethod the method to call to close the bean, null to close it the default way
+     * @param future completes with the bean
+     * @param <T> the type of the bean
+     * @see #addAsyncBean(String, Class, CompletableFuture)
+     */
+    public <T> void addAsyncBean(final String name, final TypeToken<T> type, final String destroyMethod,
+                                 final CompletableFuture<? extends T> future) {
+        addFutureBean(name, GenericTypes.rawType(type.getType()), type.getType(), future);
+        Lifecycle current = lifecycle;
+        future.thenAccept(bean -> current.register(name, bean, destroyMethod));
+    }
+
+    private void addFutureBean(final String name, final Class<?> declaredClass, final Type genericType,
+                               final CompletableFuture<?> future) {
+        if (future == null) {
+            throw new PoorMansIocRuntimeException("Bean `" + name + "` has no future to wait for");
         }
-        return list;
+        NamedObject namedObject = new FutureNamedObject(name, TypeHierarchy.supertypesOf(declaredClass), declaredClass,
+                future);
+        namedObject.setGenericType(genericType);
+        addNamedObject(namedObject);
     }
 
     /**
-     * @return null if none has been found or it is a blank string, otherwise the name for use in the qualification
+     * Calls a factory that returns a future and, when there is a listener, reports how long the future took to
+     * complete.
      */
-    private String determineQualificationName(final Parameter parameter) {
-        String returnVal = null;
-        for (Annotation annotation : parameter.getAnnotations()) {
-            if (annotation instanceof Qualifier) {
-               returnVal = ((Qualifier) annotation).value();
-               break;
+    private CompletableFuture<?> createAsync(final String name, final Supplier<Object> factory) {
+        ContextListener current = listener;
+        long start = System.nanoTime();
+        CompletableFuture<?> future = (CompletableFuture<?>) factory.get();
+        if (current != null && future != null) {
+            future.whenComplete((bean, failure) -> {
+                if (failure == null) {
+                    current.beanCreated(name, System.nanoTime() - start);
+                }
+            });
+        }
+        return future;
+    }
+
+    /**
+     * Add a bean that is created by a factory rather than an instance.  A {@link ScopeType#SINGLETON} is created the
+     * first time it is retrieved, other scopes whenever the scope needs a new instance.
+     * @param name the name of the bean to add
+     * @param declaredClass the class that the bean is registered under, along with its supertypes
+     * @param scope the scope of the bean, {@link ScopeType#POOLED} beans get a pool of the default size
+     * @param factory creates the instances of the bean
+     * @param <T> the type of the bean
+     */
+    public <T> void addBeanFactory(final String name, final Class<T> declaredClass, final ScopeType scope,
+                                   final Supplier<? extends T> factory) {
+        addBeanFactory(name, declaredClass, scope, Scope.DEFAULT_POOL_SIZE, factory);
+    }
+
+    /**
+     * Add a bean that is created by a factory rather than an instance.  A {@link ScopeType#SINGLETON} is created the
+     * first time it is retrieved, other scopes whenever the scope needs a new instance.
+     * @param name the name of the bean to add
+     * @param declaredClass the class that the bean is registered under, along with its supertypes
+     * @param scope the scope of the bean
+     * @param poolSize the maximum number of instances of a {@link ScopeType#POOLED} bean
+     * @param factory creates the instances of the bean
+     * @param <T> the type of the bean
+     */
+    public <T> void addBeanFactory(final String name, final Class<T> declaredClass, final ScopeType scope,
+                                   final int poolSize, final Supplier<? extends T> factory) {
+        addBeanFactory(name, declaredClass, scope, poolSize, context -> factory.get());
+    }
+
+    /**
+     * Add a bean that is created by a factory that is given the context creating the bean.  That is this context, or
+     * a copy of it such as a {@link #freeze() frozen} one, which is where the factory should look up the beans it
+     * depends on rather than in a context it captured.
+     * @param name the name of the bean to add
+     * @param declaredClass the class that the bean is registered under, along with its supertypes
+     * @param scope the scope of the bean
+     * @param poolSize the maximum number of instances of a {@link ScopeType#POOLED} bean
+     * @param factory creates the instances of the bean in the context it is given
+     * @param <T> the type of the bean
+     * @see #addBeanFactory(String, Class, ScopeType, int, Supplier)
+     */
+    public <T> void addBeanFactory(final String name, final Class<T> declaredClass, final ScopeType scope,
+                                   final int poolSize, final Function<PoorMansIocContext, ? extends T> factory) {
+        addBeanFactory(name, TypeToken.of(declaredClass), scope, poolSize, null, factory);
+    }
+
+    /**
+     * Add a bean of a type along with its type arguments that is created by a factory that is given the context
+     * creating the bean, along with how to close the bean.
+     * @param name the name of the bean to add
+     * @param type the type of the bean, along with its type arguments
+     * @param scope the scope of the bean
+     * @param poolSize the maximum number of instances of a {@link ScopeType#POOLED} bean
+     * @param destroyMethod the method to call to close the bean, null to close it the default way
+     * @param factory creates the instances of the bean in the context it is given
+     * @param <T> the type of the bean
+     * @see #addBeanFactory(String, Class, ScopeType, int, Function)
+     */
+    public <T> void addBeanFactory(final String name, final TypeToken<T> type, final ScopeType scope,
+                                   final int poolSize, final String destroyMethod,
+                                   final Function<PoorMansIocContext, ? extends T> factory) {
+        Class<?> declaredClass = GenericTypes.rawType(type.getType());
+        if (scope == ScopeType.SINGLETON) {
+            addFactoryBean(name, declaredClass, type.getType(), scope, poolSize, destroyMethod, context -> {
+                Object bean = factory.apply(context);
+                context.lifecycle.register(name, bean, destroyMethod);
+                return bean;
+            });
+        } else {
+            addFactoryBean(name, declaredClass, type.getType(), scope, poolSize, destroyMethod, factory::apply);
+        }
+    }
+
+    /**
+     * @param destroyMethod the method to call to close the instances that the context holds, such as idle pooled
+     * ones
+     */
+    private void addFactoryBean(final String name, final Class<?> declaredClass, final Type genericType,
+                                final ScopeType scope, final int poolSize, final String destroyMethod,
+                                final Function<PoorMansIocContext, Object> recipe) {
+        Set<Class<?>> types = TypeHierarchy.supertypesOf(declaredClass);
+        Supplier<Object> objectFactory = bindFactory(name, recipe);
+        NamedObject namedObject;
+        switch (scope) {
+            case PROTOTYPE:
+                namedObject = new PrototypeNamedObject(name, types, declaredClass, objectFactory);
+                break;
+            case THREAD:
+                namedObject = new ThreadNamedObject(name, types, declaredClass, objectFactory);
+                break;
+            case POOLED:
+                namedObject = new PooledNamedObject(name, types, declaredClass, objectFactory, poolSize);
+                break;
+            default:
+                namedObject = new LazyNamedObject(name, types, declaredClass, objectFactory);
+                break;
+        }
+        namedObject.setGenericType(genericType);
+        namedObject.setDestroyMethod(destroyMethod);
+        namedObject.setRecipe(recipe);
+        addNamedObject(namedObject);
+    }
+
+    /**
+     * Add a bean that the context may drop, and creates again with the factory when it is next retrieved.  The bean
+     * is created the first time it is retrieved, and is not closed when the context is closed.
+     * @param name the name of the bean to add
+     * @param declaredClass the class that the bean is registered under, along with its supertypes
+     * @param eviction how the context lets go of the bean
+     * @param weight the share of the budget of the {@link BeanCache} that the bean takes up
+     * @param factory creates the bean, each time it is needed again
+     * @param <T> the type of the bean
+     * @see Evictable
+     */
+    public <T> void addEvictableBean(final String name, final Class<T> declaredClass, final EvictionType eviction,
+                                     final long weight, final Supplier<? extends T> factory) {
+        addEvictableBean(name, declaredClass, eviction, weight, context -> factory.get());
+    }
+
+    /**
+     * Add a bean that the context may drop, and creates again with a factory that is given the context creating the
+     * bean.
+     * @param name the name of the bean to add
+     * @param declaredClass the class that the bean is registered under, along with its supertypes
+     * @param eviction how the context lets go of the bean
+     * @param weight the share of the budget of the {@link BeanCache} that the bean takes up
+     * @param factory creates the bean in the context it is given, each time it is needed again
+     * @param <T> the type of the bean
+     * @see #addBeanFactory(String, Class, ScopeType, int, Function)
+     */
+    public <T> void addEvictableBean(final String name, final Class<T> declaredClass, final EvictionType eviction,
+                                     final long weight, final Function<PoorMansIocContext, ? extends T> factory) {
+        addEvictableBean(name, TypeToken.of(declaredClass), eviction, weight, factory);
+    }
+
+    /**
+     * Add a bean of a type along with its type arguments that the context may drop, and creates again with a factory
+     * that is given the context creating the bean.
+     * @param name the name of the bean to add
+     * @param type the type of the bean, along with its type arguments
+     * @param eviction how the context lets go of the bean
+     * @param weight the share of the budget of the {@link BeanCache} that the bean takes up
+     * @param factory creates the bean in the context it is given, each time it is needed again
+     * @param <T> the type of the bean
+     * @see #addEvictableBean(String, Class, EvictionType, long, Function)
+     */
+    public <T> void addEvictableBean(final String name, final TypeToken<T> type, final EvictionType eviction,
+                                     final long weight, final Function<PoorMansIocContext, ? extends T> factory) {
+        addEvictableFactoryBean(name, GenericTypes.rawType(type.getType()), type.getType(), eviction, weight,
+                factory::apply);
+    }
+
+    private void addEvictableFactoryBean(final String name, final Class<?> declaredClass, final Type genericType,
+                                         final EvictionType eviction, final long weight,
+                                         final Function<PoorMansIocContext, Object> recipe) {
+        NamedObject namedObject = new EvictableNamedObject(name, TypeHierarchy.supertypesOf(declaredClass),
+                declaredClass, bindFactory(name, recipe), eviction, weight, beanCache);
+        namedObject.setGenericType(genericType);
+        namedObject.setRecipe(recipe);
+        addNamedObject(namedObject);
+    }
+
+    /**
+     * @param recipe creates the bean in the context it is given
+     * @return creates the bean in this context, or in the context this one was reloaded into
+     */
+    private Supplier<Object> bindFactory(final String name, final Function<PoorMansIocContext, Object> recipe) {
+        return () -> {
+            PoorMansIocContext target = owner();
+            return target.create(name, () -> recipe.apply(target));
+        };
+    }
+
+    private Object create(final String name, final Supplier<Object> factory) {
+        ContextListener current = listener;
+        if (current == null) {
+            return factory.get();
+        }
+        long start = System.nanoTime();
+        Object bean = factory.get();
+        current.beanCreated(name, System.nanoTime() - start);
+        return bean;
+    }
+
+    private Object[] createListOfParameters(final FactoryMethod factoryMethod, final String[] bindings) {
+        Type[] parameterTypes = factoryMethod.getGenericParameterTypes();
+        String[] qualifiers = factoryMethod.getQualifiers();
+        boolean[] providers = factoryMethod.getProviders();
+        Object[] params = new Object[parameterTypes.length];
+        for (int i = 0; i < parameterTypes.length; i++) {
+            NamedObject bound;
+            if (bindings != null) {
+                bound = findByName(bindings[i]);
+                if (bound == null) {
+                    throw new PoorMansIocRuntimeException("Unable to find bean with name `" + bindings[i] + "`");
+                }
+                params[i] = providers[i] ? provider(bound) : bound.getObject();
+            } else {
+                bound = lookUp(parameterTypes[i], qualifiers[i]);
+                params[i] = providers[i] ? provider(bound) : bound.getObject();
+            }
+            synchronized (recordLock) {
+                registry.addDependent(bound.getName(), factoryMethod.getName());
             }
         }
-        return returnVal;
+        return params;
+    }
+
+    /**
+     * Resolves a bean without retrieving it, reporting the lookup to the listener.
+     */
+    private NamedObject lookUp(final Type type, final String qualifier) {
+        ContextListener current = listener;
+        if (current == null) {
+            return resolveGeneric(type, qualifier);
+        }
+        long start = System.nanoTime();
+        NamedObject namedObject = resolveGeneric(type, qualifier);
+        current.lookedUpByType(GenericTypes.rawType(type), qualifier, System.nanoTime() - start);
+        return namedObject;
     }
 
     /**
@@ -131,17 +1019,28 @@ public class PoorMansIocContext {
      * @return the registered bean that you have retrieved from the context
      */
     public <T> T getBeanByName(final String name) {
-        return (T) mapByName.get(name);
+        ContextListener current = listener;
+        if (current == null) {
+            NamedObject namedObject = findByName(name);
+            return namedObject == null ? null : cast(namedObject.getObject());
+        }
+        long start = System.nanoTime();
+        NamedObject namedObject = findByName(name);
+        if (namedObject == null) {
+            current.lookupMissed(null, name);
+            return null;
+        }
+        Object bean = namedObject.getObject();
+        current.lookedUpByName(name, System.nanoTime() - start);
+        return cast(bean);
     }
 
-    private List<NamedObject> filterByQualifier(final List<NamedObject> list, final String qualifier) {
-        List<NamedObject> returnVal;
-        if (qualifier == null) {
-            returnVal = list;
-        } else {
-            returnVal = list.stream().filter(namedObject -> qualifier.equals(namedObject.getName())).collect(Collectors.toList());
+    private NamedObject findByName(final String name) {
+        NamedObject namedObject = registry.getByName(name);
+        if (namedObject == null && parent != null) {
+            namedObject = parent.findByName(name);
         }
-        return returnVal;
+        return namedObject;
     }
 
     /**
@@ -162,50 +1061,481 @@ public class PoorMansIocContext {
      * @return the registered bean that you have retrieved from the context
      */
     public <T> T getBeanByType(final Class clazz, final String qualifier) {
-        List<NamedObject> list = mapByClass.get(clazz);
-        List<NamedObject> filteredList = filterByQualifier(list, qualifier);
-        if (filteredList == null || filteredList.size() == 0) {
+        ContextListener current = listener;
+        if (current == null) {
+            return cast(resolve(clazz, qualifier).getObject());
+        }
+        long start = System.nanoTime();
+        Object bean = resolve(clazz, qualifier).getObject();
+        current.lookedUpByType(clazz, qualifier, System.nanoTime() - start);
+        return cast(bean);
+    }
+
+    /**
+     * Get a bean based off of its type along with its type arguments, so that beans of the same class but with
+     * different type arguments, such as `Cache<String, User>` and `Cache<Long, Order>`, don't need a qualifier.
+     * @param type the type to search the context for
+     * @param <T> the type of object to return
+     * @return the registered bean that you have retrieved from the context
+     */
+    public <T> T getBeanByType(final TypeToken<T> type) {
+        return getBeanByType(type, null);
+    }
+
+    /**
+     * Get a bean based off of its type along with its type arguments.  The type arguments of a bean are taken from
+     * the type that its factory method declares, or else from the generic supertypes of its class.  A bean whose type
+     * arguments can't be worked out, such as an instance of a generic class, matches any type arguments.  Which beans
+     * match a type is worked out once and cached until a bean of the same class is registered.
+     * @param type the type to search the context for
+     * @param qualifier the name of the bean, in the case of multiple objects of the same type being registered
+     * @param <T> the type of object to return
+     * @return the registered bean that you have retrieved from the context
+     */
+    public <T> T getBeanByType(final TypeToken<T> type, final String qualifier) {
+        return cast(getBeanByGenericType(type.getType(), qualifier));
+    }
+
+    private Object getBeanByGenericType(final Type type, final String qualifier) {
+        ContextListener current = listener;
+        if (current == null) {
+            return resolveGeneric(type, qualifier).getObject();
+        }
+        long start = System.nanoTime();
+        Object bean = resolveGeneric(type, qualifier).getObject();
+        current.lookedUpByType(GenericTypes.rawType(type), qualifier, System.nanoTime() - start);
+        return bean;
+    }
+
+    /**
+     * Get a handle to a bean that can be called repeatedly without looking the bean up again.
+     * @param clazz the class to search the context for
+     * @param <T> the type of the bean
+     * @return the handle to the bean
+     * @see #getProvider(Class, String)
+     */
+    public <T> Supplier<T> getProvider(final Class<T> clazz) {
+        return getProvider(clazz, null);
+    }
+
+    /**
+     * Get a handle to a bean that can be called repeatedly without looking the bean up again.  The bean is resolved
+     * once, when the handle is created: a singleton that already exists is held by the handle directly, any other
+     * bean is bound so that the handle only asks its scope for an instance.  Factory methods get such a handle by
+     * declaring a `Supplier<Bean>` parameter.  Calls to the handle are not reported to the {@link ContextListener}.
+     * @param clazz the class to search the context for
+     * @param qualifier the name of the bean, in the case of multiple objects of the same type being registered
+     * @param <T> the type of the bean
+     * @return the handle to the bean
+     */
+    public <T> Supplier<T> getProvider(final Class<T> clazz, final String qualifier) {
+        ContextListener current = listener;
+        long start = current == null ? 0L : System.nanoTime();
+        Supplier<T> provider = provider(resolve(clazz, qualifier));
+        if (current != null) {
+            current.lookedUpByType(clazz, qualifier, System.nanoTime() - start);
+        }
+        return provider;
+    }
+
+    /**
+     * Get a handle to a bean of a type along with its type arguments.
+     * @param type the type to search the context for
+     * @param <T> the type of the bean
+     * @return the handle to the bean
+     * @see #getProvider(TypeToken, String)
+     */
+    public <T> Supplier<T> getProvider(final TypeToken<T> type) {
+        return getProvider(type, null);
+    }
+
+    /**
+     * Get a handle to a bean of a type along with its type arguments.
+     * @param type the type to search the context for
+     * @param qualifier the name of the bean, in the case of multiple objects of the same type being registered
+     * @param <T> the type of the bean
+     * @return the handle to the bean
+     * @see #getProvider(Class, String)
+     * @see #getBeanByType(TypeToken, String)
+     */
+    public <T> Supplier<T> getProvider(final TypeToken<T> type, final String qualifier) {
+        return getGenericProvider(type.getType(), qualifier);
+    }
+
+    private <T> Supplier<T> getGenericProvider(final Type type, final String qualifier) {
+        ContextListener current = listener;
+        long start = current == null ? 0L : System.nanoTime();
+        Supplier<T> provider = provider(resolveGeneric(type, qualifier));
+        if (current != null) {
+            current.lookedUpByType(GenericTypes.rawType(type), qualifier, System.nanoTime() - start);
+        }
+        return provider;
+    }
+
+    private <T> Supplier<T> provider(final NamedObject namedObject) {
+        if (namedObject.getClass() == NamedObject.class) {
+            T bean = cast(namedObject.getObject());
+            return () -> bean;
+        }
+        return () -> cast(namedObject.getObject());
+    }
+
+    /**
+     * The beans are handed out as whatever type the caller asks for, which the context has no way of checking, so a
+     * bean of the wrong type fails with a {@link ClassCastException} where the caller uses it.
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> T cast(final Object bean) {
+        return (T) bean;
+    }
+
+    /**
+     * Fills in the {@link Inject} fields and methods of an object that wasn't created by the context, such as one
+     * created by another framework.  Fields are set before methods are called, and those declared by a superclass
+     * before those declared by a subclass.  Which fields and methods a class has is worked out once per class, and the
+     * beans they resolve to are kept until this context or one of its parents changes, so injecting into another
+     * instance of the same class costs little more than setting its fields.  Only the lookups made when the beans are
+     * resolved are reported to the {@link ContextListener}.
+     * @param instance the object to inject into
+     * @param <T> the type of the object
+     * @return the object
+     * @throws PoorMansIocRuntimeException if a bean can't be matched, or a field is final
+     */
+    public <T> T injectInto(final T instance) {
+        InjectionPlan plan = InjectionPlan.of(instance.getClass());
+        plan.inject(instance, bindInjectionPoints(plan.getMemberPoints()));
+        return instance;
+    }
+
+    /**
+     * Creates an object through its constructor marked {@link Inject}, or else its constructor without parameters,
+     * then fills in its {@link Inject} fields and methods the same way as {@link #injectInto(Object)}.  The object is
+     * not registered as a bean, and nothing is closed along with the context.
+     * @param clazz the class of the object
+     * @param <T> the type of the object
+     * @return the new object
+     * @throws PoorMansIocRuntimeException if the class can't be instantiated or a bean can't be matched
+     */
+    public <T> T newInstance(final Class<T> clazz) {
+        InjectionPlan plan = InjectionPlan.of(clazz);
+        T instance = clazz.cast(plan.instantiate(bindInjectionPoints(plan.getConstructorPoints())));
+        plan.inject(instance, bindInjectionPoints(plan.getMemberPoints()));
+        return instance;
+    }
+
+    /**
+     * @return the values to inject, reusing the beans that the points were last resolved to if nothing has changed since
+     */
+    private Object[] bindInjectionPoints(final InjectionPlan.Points points) {
+        InjectionPlan.Binding binding = injectionBindings.get(points);
+        if (binding == null || !isCurrent(binding.getStamps())) {
+            Object[] stamps = registryStamps();
+            NamedObject[] beans = new NamedObject[points.size()];
+            Object[] values = new Object[points.size()];
+            for (int i = 0; i < beans.length; i++) {
+                NamedObject bound = lookUp(points.getType(i), points.getQualifier(i));
+                if (points.isProvider(i)) {
+                    values[i] = provider(bound);
+                } else if (bound.getClass() == NamedObject.class) {
+                    values[i] = bound.getObject();
+                } else {
+                    beans[i] = bound;
+                }
+            }
+            binding = new InjectionPlan.Binding(stamps, beans, values);
+            injectionBindings.put(points, binding);
+        }
+        return binding.getValues();
+    }
+
+    /**
+     * @return the registry of this context and of each of its parents, each followed by the beans it held
+     */
+    private Object[] registryStamps() {
+        int depth = 0;
+        for (PoorMansIocContext context = this; context != null; context = context.parent) {
+            depth++;
+        }
+        Object[] stamps = new Object[depth * 2];
+        int i = 0;
+        for (PoorMansIocContext context = this; context != null; context = context.parent) {
+            BeanRegistry current = context.registry;
+            stamps[i++] = current;
+            stamps[i++] = current.getAllBeans();
+        }
+        return stamps;
+    }
+
+    /**
+     * @return true if neither this context nor any of its parents has changed since the stamps were taken
+     */
+    private boolean isCurrent(final Object[] stamps) {
+        int i = 0;
+        for (PoorMansIocContext context = this; context != null; context = context.parent) {
+            BeanRegistry current = context.registry;
+            if (i + 1 >= stamps.length || stamps[i] != current || stamps[i + 1] != current.getAllBeans()) {
+                return false;
+            }
+            i += 2;
+        }
+        return i == stamps.length;
+    }
+
+    /**
+     * Borrow an instance of a {@link ScopeType#POOLED} bean.  If every instance is in use, this waits until one is
+     * given back.
+     * @param clazz the class to search the context for
+     * @param <T> the type of object to return
+     * @return the borrowed instance, which has to be closed to give it back
+     */
+    public <T> PooledBean<T> borrowBean(final Class<T> clazz) {
+        return borrowBean(clazz, null);
+    }
+
+    /**
+     * Borrow an instance of a {@link ScopeType#POOLED} bean.  If every instance is in use, this waits until one is
+     * given back.
+     * @param clazz the class to search the context for
+     * @param qualifier the name of the bean, in the case of multiple objects of the same type being registered
+     * @param <T> the type of object to return
+     * @return the borrowed instance, which has to be closed to give it back
+     */
+    public <T> PooledBean<T> borrowBean(final Class<T> clazz, final String qualifier) {
+        NamedObject namedObject = resolve(clazz, qualifier);
+        if (!(namedObject instanceof PooledNamedObject)) {
+            throw new PoorMansIocRuntimeException("Bean `" + namedObject.getName() + "` is not pooled");
+        }
+        PooledNamedObject pool = (PooledNamedObject) namedObject;
+        return new PooledBean<>(pool, clazz.cast(pool.borrow()));
+    }
+
+    /**
+     * Drops the current thread's instances of every {@link ScopeType#THREAD} bean, so that they can be garbage
+     * collected.  Call this when a pooled thread finishes a unit of work.
+     */
+    public void releaseThreadScopedBeans() {
+        TypeEntry allBeans = registry.getAllBeans();
+        if (allBeans != null) {
+            for (NamedObject namedObject : allBeans.getObjects()) {
+                if (namedObject instanceof ThreadNamedObject) {
+                    ((ThreadNamedObject) namedObject).release();
+                }
+            }
+        }
+    }
+
+    private NamedObject resolve(final Class<?> clazz, final String qualifier) {
+        NamedObject namedObject = findResolved(clazz, qualifier);
+        if (namedObject == null) {
+            notifyMissed(clazz, qualifier);
             if (qualifier == null || "".equals(qualifier)) {
                 throw new PoorMansIocRuntimeException("Unable to match on class `" + clazz + "`.");
             } else {
                 throw new PoorMansIocRuntimeException("Unable to match on class `" + clazz + "` with qualifier `" + qualifier + "`.");
             }
-        } else if (filteredList.size() > 1) {
-            String errStr = "Multiple matches found for class `" + clazz.getName() + "`";
-            String objectsFound = list.stream()
-                    .map(namedObject -> "[ class: " + namedObject.getObject().getClass().getName() + "]")
-                    .collect(Collectors.joining(", "));
-            errStr += objectsFound;
-            throw new PoorMansIocRuntimeException(errStr);
         }
-        return (T) filteredList.get(0).getObject();
+        return namedObject;
+    }
+
+    /**
+     * @return the bean matching the class and qualifier in this context or, if there is none, in the parent context.
+     * null if there is no match at all
+     */
+    private NamedObject findResolved(final Class<?> clazz, final String qualifier) {
+        BeanRegistry current = registry;
+        if (qualifier == null) {
+            TypeEntry entry = findByClass(current, clazz);
+            if (entry != null) {
+                if (!entry.isResolved()) {
+                    notifyAmbiguous(clazz);
+                    throw new PoorMansIocRuntimeException(entry.getAmbiguityMessage());
+                }
+                return entry.getResolved();
+            }
+        } else {
+            // names are unique, so a qualified lookup is a lookup by name that must also match the type
+            NamedObject namedObject = current.getByName(qualifier);
+            if (namedObject != null && (namedObject.isRegisteredAs(clazz) || clazz.isAssignableFrom(namedObject.getBeanClass()))) {
+                return namedObject;
+            }
+        }
+        return parent == null ? null : parent.findResolved(clazz, qualifier);
+    }
+
+    /**
+     * Resolves a plain class the same way as {@link #resolve(Class, String)}.
+     */
+    private NamedObject resolveGeneric(final Type type, final String qualifier) {
+        if (type instanceof Class) {
+            return resolve((Class<?>) type, qualifier);
+        }
+        NamedObject namedObject = findResolvedGeneric(type, qualifier);
+        if (namedObject == null) {
+            notifyMissed(GenericTypes.rawType(type), qualifier);
+            if (qualifier == null || "".equals(qualifier)) {
+                throw new PoorMansIocRuntimeException("Unable to match on type `" + type.getTypeName() + "`.");
+            } else {
+                throw new PoorMansIocRuntimeException("Unable to match on type `" + type.getTypeName() + "` with qualifier `" + qualifier + "`.");
+            }
+        }
+        return namedObject;
+    }
+
+    /**
+     * @return the bean matching the type and qualifier in this context or, if there is none, in the parent context.
+     * null if there is no match at all
+     */
+    private NamedObject findResolvedGeneric(final Type type, final String qualifier) {
+        BeanRegistry current = registry;
+        TypeEntry entry = current.getByGenericType(type, findByClass(current, GenericTypes.rawType(type)));
+        if (qualifier == null) {
+            if (entry != null) {
+                if (!entry.isResolved()) {
+                    notifyAmbiguous(GenericTypes.rawType(type));
+                    throw new PoorMansIocRuntimeException(entry.getAmbiguityMessage());
+                }
+                return entry.getResolved();
+            }
+        } else {
+            NamedObject namedObject = current.getByName(qualifier);
+            if (namedObject != null && entry != null && entry.getObjects().contains(namedObject)) {
+                return namedObject;
+            }
+        }
+        return parent == null ? null : parent.findResolvedGeneric(type, qualifier);
+    }
+
+    private void notifyMissed(final Class<?> clazz, final String qualifier) {
+        ContextListener current = listener;
+        if (current != null) {
+            current.lookupMissed(clazz, qualifier);
+        }
+    }
+
+    private void notifyAmbiguous(final Class<?> clazz) {
+        ContextListener current = listener;
+        if (current != null) {
+            current.lookupAmbiguous(clazz);
+        }
+    }
+
+    /**
+     * @return the beans registered under the class or, if there are none, the beans that are instances of it
+     */
+    private TypeEntry findByClass(final BeanRegistry current, final Class<?> clazz) {
+        TypeEntry entry = current.getByClass(clazz);
+        if (entry == null) {
+            entry = current.getByAssignableClass(clazz);
+        }
+        return entry;
     }
 
     /**
-     * Will retrieve all of the beans
-     * @param clazz
-     * @param <T>
-     * @return
+     * Will retrieve all of the beans, including those of the parent contexts.  The list is read-only and is cached
+     * until a bean of the type is registered, so repeated calls don't create a new list each time.
+     * {@link ScopeType#POOLED} beans are left out, since they have to be borrowed with {@link #borrowBean(Class, String)}.
+     * @param clazz the class to search the context for
+     * @param <T> the type of list to return
+     * @return the distinct beans of the class, in registration order, an empty list if there are none
      */
     public <T> T getAllBeansByType(final Class clazz) {
-        List<NamedObject> list = mapByClass.get(clazz);
-        return createUniqueList(list);
+        TypeEntry entry = findByClass(registry, clazz);
+        List<Object> beans = entry == null ? Collections.emptyList() : entry.getBeans();
+        if (parent != null) {
+            List<Object> parentBeans = parent.getAllBeansByType(clazz);
+            if (beans.isEmpty()) {
+                beans = parentBeans;
+            } else if (!parentBeans.isEmpty()) {
+                Collection<Object> merged = new LinkedHashSet<>(beans);
+                merged.addAll(parentBeans);
+                beans = Collections.unmodifiableList(new ArrayList<>(merged));
+            }
+        }
+        return cast(beans);
     }
 
-    private <T> T createUniqueList(final List<NamedObject> list) {
-        return (T) list
-                .stream()
-                .map(item -> item.getObject())
-                .distinct()
-                .collect(Collectors.toList());
+    /**
+     * Visits all of the beans of a type, including those of the parent contexts, without creating a list.  As with
+     * {@link #getAllBeansByType(Class)}, {@link ScopeType#POOLED} beans are left out.
+     * @param clazz the class to search the context for
+     * @param visitor called with each bean, in registration order
+     * @param <T> the type of the beans
+     */
+    public <T> void forEachBeanOfType(final Class<T> clazz, final Consumer<? super T> visitor) {
+        for (PoorMansIocContext context = this; context != null; context = context.parent) {
+            TypeEntry entry = findByClass(context.registry, clazz);
+            if (entry != null) {
+                List<Object> beans = entry.getBeans();
+                for (int i = 0; i < beans.size(); i++) {
+                    visitor.accept(clazz.cast(beans.get(i)));
+                }
+            }
+        }
     }
 
     /**
-     * Will clear the context.  This is useful when testing, as this doesn't have fancy JUnit runners
+     * Will clear the context.  This is useful when testing, as this doesn't have fancy JUnit runners.  The parent
+     * context, if there is one, is not affected.  The singletons of the context are closed, as by {@link #close()}.
      */
     public void clear() {
-        mapByName = new HashMap<>();
-        mapByClass = new HashMap<>();
+        checkNotFrozen();
+        close();
+    }
+
+    /**
+     * Closes the singletons of the context, waiting up to {@link #DEFAULT_CLOSE_TIMEOUT_SECONDS} for each, and
+     * empties the context.  The context can be used again afterwards.  A frozen context keeps its beans, but they
+     * are closed all the same.
+     * @throws PoorMansIocRuntimeException once every bean has been closed, if any of them failed or timed out
+     */
+    @Override
+    public void close() {
+        close(DEFAULT_CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Same as {@link #close()}, with a different timeout.  The time each bean took to close is reported to the
+     * {@link ContextListener}.
+     * @param timeout how long to wait for each bean to close
+     * @param unit the unit of the timeout
+     * @throws PoorMansIocRuntimeException once every bean has been closed, if any of them failed or timed out
+     */
+    public void close(final long timeout, final TimeUnit unit) {
+        Lifecycle closing;
+        BeanRegistry closed;
+        synchronized (writeLock) {
+            closing = lifecycle;
+            lifecycle = new Lifecycle();
+            closed = registry;
+            if (!frozen) {
+                registry = new BeanRegistry();
+            }
+        }
+        releaseHeldInstances(closed, closing);
+        beanCache.clear();
+        closing.close(timeout, unit, listener);
+    }
+
+    /**
+     * Hands the instances that the beans of a registry hold on to, without anyone having retrieved them, to the
+     * lifecycle to close.  They are registered last, so are closed before the beans they may have been created from.
+     */
+    private static void releaseHeldInstances(final BeanRegistry closed, final Lifecycle closing) {
+        TypeEntry allBeans = closed.getAllBeans();
+        if (allBeans == null) {
+            return;
+        }
+        for (NamedObject namedObject : allBeans.getObjects()) {
+            if (namedObject instanceof PooledNamedObject) {
+                for (Object instance : ((PooledNamedObject) namedObject).drainIdle()) {
+                    closing.register(namedObject.getName(), instance, namedObject.getDestroyMethod());
+                }
+            } else if (namedObject instanceof ThreadNamedObject) {
+                for (Object instance : ((ThreadNamedObject) namedObject).releaseAll()) {
+                    closing.register(namedObject.getName(), instance, namedObject.getDestroyMethod());
+                }
+            }
+        }
     }
 
 }
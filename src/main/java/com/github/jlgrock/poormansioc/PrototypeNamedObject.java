@@ -0,0 +1,45 @@
+package com.github.jlgrock.poormansioc;
+
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * A named object that is created again every time it is asked for.
+ */
+class PrototypeNamedObject extends NamedObject {
+    private final Class<?> declaredClass;
+    private final Supplier<Object> factory;
+
+    /**
+     * @param nameIn the name associated with the object
+     * @param typesIn the types that the object is registered under
+     * @param declaredClassIn the class that the object is declared as
+     * @param factoryIn creates the object
+     */
+    PrototypeNamedObject(final String nameIn, final Set<Class<?>> typesIn, final Class<?> declaredClassIn,
+                         final Supplier<Object> factoryIn) {
+        super(null, nameIn, typesIn);
+        declaredClass = declaredClassIn;
+        factory = factoryIn;
+    }
+
+    @Override
+    public Object getObject() {
+        return factory.get();
+    }
+
+    @Override
+    NamedObject withFactory(final Supplier<Object> factoryIn) {
+        return new PrototypeNamedObject(getName(), getTypes(), declaredClass, factoryIn);
+    }
+
+    @Override
+    boolean isSingleInstance() {
+        return false;
+    }
+
+    @Override
+    Class<?> getBeanClass() {
+        return declaredClass;
+    }
+}
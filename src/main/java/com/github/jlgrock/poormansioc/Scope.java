@@ -0,0 +1,32 @@
+package com.github.jlgrock.poormansioc;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+/**
+ * Sets the scope of the bean created by a method of a configuration class.  Beans that aren't singletons are created
+ * by calling the method again, so they are registered under the declared return type of the method.
+ */
+@Target(METHOD)
+@Retention(RUNTIME)
+@Documented
+public @interface Scope {
+    /**
+     * The pool size used when none is given
+     */
+    int DEFAULT_POOL_SIZE = 8;
+
+    /**
+     * The scope of the bean
+     */
+    ScopeType value();
+
+    /**
+     * The maximum number of instances, only used by {@link ScopeType#POOLED}
+     */
+    int poolSize() default DEFAULT_POOL_SIZE;
+}
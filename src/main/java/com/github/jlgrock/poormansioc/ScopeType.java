@@ -0,0 +1,24 @@
+package com.github.jlgrock.poormansioc;
+
+/**
+ * How many instances of a bean the context creates, and who gets to use them.
+ */
+public enum ScopeType {
+    /**
+     * One instance, shared by everyone.  This is the default.
+     */
+    SINGLETON,
+    /**
+     * A new instance every time the bean is retrieved.
+     */
+    PROTOTYPE,
+    /**
+     * One instance per thread, created the first time the thread retrieves the bean.
+     */
+    THREAD,
+    /**
+     * A bounded pool of instances that are borrowed with {@link PoorMansIocContext#borrowBean(Class)} and given back
+     * by closing the {@link PooledBean}.  Useful for objects that are expensive to create and not thread safe.
+     */
+    POOLED
+}
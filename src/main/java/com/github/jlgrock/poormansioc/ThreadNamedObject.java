@@ -0,0 +1,113 @@
+package com.github.jlgrock.poormansioc;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * A named object with one instance per thread.  The instances belong to this object rather than to a static
+ * {@link ThreadLocal}, and this object keeps track of every instance it created, so they are released along with the
+ * context that holds it, such as after a {@link PoorMansIocContext#clear()}, even on threads that never ask for
+ * them again.
+ */
+class ThreadNamedObject extends NamedObject {
+    private final Class<?> declaredClass;
+    private final Supplier<Object> factory;
+    private final ThreadLocal<Slot> slots = new ThreadLocal<>();
+    private final Set<Slot> created = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @param nameIn the name associated with the object
+     * @param typesIn the types that the object is registered under
+     * @param declaredClassIn the class that the object is declared as
+     * @param factoryIn creates the object for each thread
+     */
+    ThreadNamedObject(final String nameIn, final Set<Class<?>> typesIn, final Class<?> declaredClassIn,
+                      final Supplier<Object> factoryIn) {
+        super(null, nameIn, typesIn);
+        declaredClass = declaredClassIn;
+        factory = factoryIn;
+    }
+
+    @Override
+    public Object getObject() {
+        Slot slot = slots.get();
+        Object instance = slot == null ? null : slot.instance;
+        if (instance == null) {
+            instance = factory.get();
+            slot = new Slot(instance);
+            slots.set(slot);
+            // the instances of threads that have ended are only dropped, as they were before they were tracked
+            created.removeIf(Slot::isAbandoned);
+            created.add(slot);
+        }
+        return instance;
+    }
+
+    /**
+     * Drops the instance of the current thread, if there is one.  The next retrieval on the thread creates a new one.
+     */
+    void release() {
+        Slot slot = slots.get();
+        if (slot != null) {
+            created.remove(slot);
+            slots.remove();
+        }
+    }
+
+    /**
+     * Drops the instances of every thread.  A thread only keeps an empty slot, and the next retrieval on the thread
+     * creates a new instance.
+     * @return the instances that were dropped
+     */
+    List<Object> releaseAll() {
+        List<Object> released = new ArrayList<>();
+        for (Slot slot : created) {
+            created.remove(slot);
+            Object instance = slot.instance;
+            slot.instance = null;
+            if (instance != null) {
+                released.add(instance);
+            }
+        }
+        return released;
+    }
+
+    /**
+     * @return a copy without any of the instances of this object
+     */
+    @Override
+    NamedObject withFactory(final Supplier<Object> factoryIn) {
+        return new ThreadNamedObject(getName(), getTypes(), declaredClass, factoryIn);
+    }
+
+    @Override
+    boolean isSingleInstance() {
+        return false;
+    }
+
+    @Override
+    Class<?> getBeanClass() {
+        return declaredClass;
+    }
+
+    /**
+     * The instance of one thread, which the thread itself holds through {@link #slots}.
+     */
+    private static final class Slot {
+        private final WeakReference<Thread> owner = new WeakReference<>(Thread.currentThread());
+        private volatile Object instance;
+
+        private Slot(final Object instanceIn) {
+            instance = instanceIn;
+        }
+
+        private boolean isAbandoned() {
+            Thread thread = owner.get();
+            return thread == null || !thread.isAlive();
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.github.jlgrock.poormansioc;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
+
+/**
+ * Everything the context knows about a single type, resolved at registration time so that a lookup by type is a
+ * single hash probe.  An entry is never modified once it has been published - registering another bean of the same
+ * type replaces the entry.
+ * <p>
+ * Successive entries of a type share one array that grows by doubling.  An entry only ever reads the first
+ * {@code size} slots, and the writer only ever fills the slots after them, so adding a bean is amortized constant
+ * time rather than a copy of every bean already registered for the type.
+ * <p>
+ * The de-duplicated list of beans is built the first time it is asked for and then kept, as long as every bean of the
+ * entry always returns the same instance.
+ */
+class TypeEntry {
+    private static final int INITIAL_CAPACITY = 4;
+
+    private final Class<?> clazz;
+    private final NamedObject[] objects;
+    private final int size;
+    private final NamedObject resolved;
+    private final boolean cacheable;
+    private volatile String ambiguityMessage;
+    private volatile List<Object> beans;
+
+    private TypeEntry(final Class<?> clazzIn, final NamedObject[] objectsIn, final int sizeIn, final boolean cacheableIn) {
+        clazz = clazzIn;
+        objects = objectsIn;
+        size = sizeIn;
+        resolved = sizeIn == 1 ? objectsIn[0] : null;
+        cacheable = cacheableIn;
+    }
+
+    /**
+     * Must only be called by the thread holding the context's write lock, and only with the entry that is currently
+     * published for the type.
+     * @param previous the entry currently registered for the type, or null if there is none
+     * @param clazz the type the entry is for
+     * @param namedObject the bean to add
+     * @return a new entry containing the beans of the previous entry followed by the new bean
+     */
+    static TypeEntry append(final TypeEntry previous, final Class<?> clazz, final NamedObject namedObject) {
+        NamedObject[] array = ensureCapacity(previous, 1);
+        int size = previous == null ? 0 : previous.size;
+        array[size] = namedObject;
+        return new TypeEntry(clazz, array, size + 1, isCacheable(previous) && namedObject.isSingleInstance());
+    }
+
+    /**
+     * Same as {@link #append(TypeEntry, Class, NamedObject)}, for several beans at once.
+     */
+    static TypeEntry appendAll(final TypeEntry previous, final Class<?> clazz, final Collection<NamedObject> namedObjects) {
+        NamedObject[] array = ensureCapacity(previous, namedObjects.size());
+        int size = previous == null ? 0 : previous.size;
+        boolean cacheable = isCacheable(previous);
+        for (NamedObject namedObject : namedObjects) {
+            array[size++] = namedObject;
+            cacheable &= namedObject.isSingleInstance();
+        }
+        return new TypeEntry(clazz, array, size, cacheable);
+    }
+
+    /**
+     * @param entry the entry to copy
+     * @param copier returns the bean to put in place of each bean of the entry
+     * @return an entry with the beans that the copier returned, in an array that is exactly large enough
+     */
+    static TypeEntry copy(final TypeEntry entry, final UnaryOperator<NamedObject> copier) {
+        NamedObject[] array = new NamedObject[entry.size];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = copier.apply(entry.objects[i]);
+        }
+        return new TypeEntry(entry.clazz, array, entry.size, entry.cacheable);
+    }
+
+    private static boolean isCacheable(final TypeEntry previous) {
+        return previous == null || previous.cacheable;
+    }
+
+    private static NamedObject[] ensureCapacity(final TypeEntry previous, final int additional) {
+        if (previous == null) {
+            return new NamedObject[Math.max(INITIAL_CAPACITY, additional)];
+        }
+        int required = previous.size + additional;
+        if (required <= previous.objects.length) {
+            return previous.objects;
+        }
+        return Arrays.copyOf(previous.objects, Math.max(required, previous.objects.length * 2));
+    }
+
+    /**
+     * @return a read-only view of the beans registered for the type, in registration order
+     */
+    List<NamedObject> getObjects() {
+        return new ObjectsView(objects, size);
+    }
+
+    /**
+     * @return the distinct beans registered for the type, in registration order, leaving out {@link ScopeType#POOLED}
+     * beans since those can only be borrowed.  The list is read-only, and is the same list on every call unless the
+     * type has beans that aren't single instances.
+     */
+    List<Object> getBeans() {
+        List<Object> result = beans;
+        if (result == null) {
+            Collection<Object> distinct = new LinkedHashSet<>();
+            for (int i = 0; i < size; i++) {
+                if (!(objects[i] instanceof PooledNamedObject)) {
+                    distinct.add(objects[i].getObject());
+                }
+            }
+            result = Collections.unmodifiableList(new ArrayList<>(distinct));
+            if (cacheable) {
+                beans = result;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return true if exactly one bean is registered for the type
+     */
+    boolean isResolved() {
+        return size == 1;
+    }
+
+    /**
+     * @return the single bean registered for the type, only valid if {@link #isResolved()}
+     */
+    NamedObject getResolved() {
+        return resolved;
+    }
+
+    /**
+     * @return the message describing all of the beans that match, built once per entry
+     */
+    String getAmbiguityMessage() {
+        String message = ambiguityMessage;
+        if (message == null) {
+            message = "Multiple matches found for class `" + clazz.getName() + "`" + getObjects().stream()
+                    .map(namedObject -> "[ class: " + namedObject.getBeanClass().getName() + "]")
+                    .collect(Collectors.joining(", "));
+            ambiguityMessage = message;
+        }
+        return message;
+    }
+
+    private static final class ObjectsView extends AbstractList<NamedObject> implements RandomAccess {
+        private final NamedObject[] objects;
+        private final int size;
+
+        private ObjectsView(final NamedObject[] objectsIn, final int sizeIn) {
+            objects = objectsIn;
+            size = sizeIn;
+        }
+
+        @Override
+        public NamedObject get(final int index) {
+            if (index >= size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            }
+            return objects[index];
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.github.jlgrock.poormansioc;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * The types that a bean is registered under.  The hierarchy of a class is only walked once - registering more beans
+ * of the same class reuses the same set.
+ */
+final class TypeHierarchy {
+    private static final ClassValue<Set<Class<?>>> SUPERTYPES = new ClassValue<Set<Class<?>>>() {
+        @Override
+        protected Set<Class<?>> computeValue(final Class<?> type) {
+            Set<Class<?>> types = new LinkedHashSet<>();
+            for (Class<?> current = type; current != null && current != Object.class; current = current.getSuperclass()) {
+                types.add(current);
+                addInterfaces(current, types);
+            }
+            return Collections.unmodifiableSet(types);
+        }
+    };
+
+    private TypeHierarchy() {
+    }
+
+    /**
+     * @param clazz the class of a bean
+     * @return the class, all of its superclasses and all of the interfaces that any of them implement, directly or
+     * through other interfaces.  {@link Object} is left out, as every bean would match it.
+     */
+    static Set<Class<?>> supertypesOf(final Class<?> clazz) {
+        return SUPERTYPES.get(clazz);
+    }
+
+    private static void addInterfaces(final Class<?> clazz, final Set<Class<?>> types) {
+        for (Class<?> classInterface : clazz.getInterfaces()) {
+            if (types.add(classInterface)) {
+                addInterfaces(classInterface, types);
+            }
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.github.jlgrock.poormansioc;
+
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+
+/**
+ * A type along with its type arguments, for looking up beans of a generic type such as `Cache<String, User>`
+ * without a qualifier.  Create one as an anonymous subclass, so that the type arguments are kept:
+ * <pre>
+ *     Cache&lt;String, User&gt; users = context.getBeanByType(new TypeToken&lt;Cache&lt;String, User&gt;&gt;() { });
+ * </pre>
+ * @param <T> the type
+ */
+public abstract class TypeToken<T> {
+    private final Type type;
+
+    /**
+     * Captures the type argument of the anonymous subclass.
+     */
+    protected TypeToken() {
+        Type superclass = getClass().getGenericSuperclass();
+        if (!(superclass instanceof ParameterizedType)) {
+            throw new PoorMansIocRuntimeException("TypeToken has to be created with a type argument, such as "
+                    + "`new TypeToken<List<String>>() { }`");
+        }
+        type = ((ParameterizedType) superclass).getActualTypeArguments()[0];
+    }
+
+    private TypeToken(final Type typeIn) {
+        type = typeIn;
+    }
+
+    /**
+     * @param type the type, such as the generic type of a field or parameter
+     * @return the token of the type
+     */
+    public static TypeToken<?> of(final Type type) {
+        return new TypeToken<Object>(type) {
+        };
+    }
+
+    /**
+     * @param clazz the class, which has no type arguments
+     * @param <T> the type
+     * @return the token of the class
+     */
+    public static <T> TypeToken<T> of(final Class<T> clazz) {
+        return new TypeToken<T>(clazz) {
+        };
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    @Override
+    public boolean equals(final Object other) {
+        return other instanceof TypeToken && type.equals(((TypeToken<?>) other).type);
+    }
+
+    @Override
+    public int hashCode() {
+        return type.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return type.getTypeName();
+    }
+}
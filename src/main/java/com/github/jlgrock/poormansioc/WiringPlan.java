@@ -0,0 +1,208 @@
+package com.github.jlgrock.poormansioc;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * The wiring of a set of configuration classes, as worked out the first time they are added: the order to create
+ * the beans in, what each bean depends on and the bean that each factory method parameter was bound to.  The plan is
+ * saved to a small binary file and replayed on the next start instead of analysing the classes and resolving the
+ * parameters again.  The file holds a checksum of every configuration class, and is rejected as soon as one of them
+ * has changed.  The checksums don't cover the beans that were already in the context, so the context checks those
+ * bindings itself before replaying a plan.
+ */
+final class WiringPlan {
+    private static final int MAGIC = 0x504d4943;
+    private static final int VERSION = 1;
+    private static final long NO_CHECKSUM = -1L;
+
+    private static final ClassValue<Long> CHECKSUMS = new ClassValue<Long>() {
+        @Override
+        protected Long computeValue(final Class<?> type) {
+            return computeChecksum(type);
+        }
+    };
+
+    private WiringPlan() {
+    }
+
+    /**
+     * @param file where to save the plan
+     * @param classes the configuration classes, in the order they were given
+     * @param graph the graph that was built for the classes, with the bindings of every factory method
+     * @return true if the plan was saved, false if it couldn't be - in which case the next start builds the graph
+     * again.  The plan is written to a temporary file that replaces the file in one step where the file system
+     * supports it, and the temporary file is never left behind.
+     */
+    static boolean write(final File file, final List<Class<?>> classes, final ConfigurationGraph graph) {
+        Map<Class<?>, Integer> classIndexes = new HashMap<>();
+        for (int i = 0; i < classes.size(); i++) {
+            classIndexes.put(classes.get(i), i);
+        }
+        Map<ConfigurationGraph.Node, Integer> nodeIndexes = new HashMap<>();
+        Path temp = null;
+        try {
+            File directory = file.getAbsoluteFile().getParentFile();
+            Files.createDirectories(directory.toPath());
+            temp = Files.createTempFile(directory.toPath(), file.getName(), ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(classes.size());
+                for (Class<?> clazz : classes) {
+                    out.writeUTF(clazz.getName());
+                    out.writeLong(checksum(clazz));
+                }
+                List<ConfigurationGraph.Node> nodes = graph.getNodes();
+                out.writeInt(nodes.size());
+                for (ConfigurationGraph.Node node : nodes) {
+                    nodeIndexes.put(node, nodeIndexes.size());
+                    FactoryMethod factoryMethod = node.getFactoryMethod();
+                    out.writeInt(classIndexes.get(node.getPlan().getConfigurationClass()));
+                    out.writeUTF(factoryMethod == null ? "" : factoryMethod.getName());
+                    out.writeInt(node.getDependencies().size());
+                    for (ConfigurationGraph.Node dependency : node.getDependencies()) {
+                        out.writeInt(nodeIndexes.get(dependency));
+                    }
+                    String[] bindings = node.getBindings();
+                    out.writeInt(bindings == null ? 0 : bindings.length);
+                    if (bindings != null) {
+                        for (String binding : bindings) {
+                            out.writeUTF(binding);
+                        }
+                    }
+                }
+            }
+            try {
+                Files.move(temp, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            return true;
+        } catch (IOException e) {
+            return false;
+        } finally {
+            if (temp != null) {
+                try {
+                    Files.deleteIfExists(temp);
+                } catch (IOException e) {
+                    // the plan is only a cache, a stray temporary file does no harm beyond taking up space
+                }
+            }
+        }
+    }
+
+    /**
+     * @param file the saved plan
+     * @param classes the configuration classes to add, which have to be the ones the plan was saved for
+     * @return the graph of the plan, with the bindings of every factory method, or null if there is no plan or it
+     * is stale or unreadable
+     */
+    static ConfigurationGraph read(final File file, final List<Class<?>> classes) {
+        if (!file.isFile()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath())))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readInt() != classes.size()) {
+                return null;
+            }
+            ConfigurationPlan[] plans = new ConfigurationPlan[classes.size()];
+            for (int i = 0; i < plans.length; i++) {
+                Class<?> clazz = classes.get(i);
+                long checksum = checksum(clazz);
+                if (!in.readUTF().equals(clazz.getName()) || in.readLong() != checksum || checksum == NO_CHECKSUM) {
+                    return null;
+                }
+                plans[i] = ConfigurationPlan.of(clazz);
+            }
+            int nodeCount = in.readInt();
+            List<ConfigurationGraph.Node> nodes = new ArrayList<>(nodeCount);
+            for (int i = 0; i < nodeCount; i++) {
+                ConfigurationGraph.Node node = readNode(in, plans, nodes);
+                if (node == null) {
+                    return null;
+                }
+                nodes.add(node);
+            }
+            return ConfigurationGraph.restore(nodes);
+        } catch (IOException | IndexOutOfBoundsException | NegativeArraySizeException e) {
+            return null;
+        }
+    }
+
+    private static ConfigurationGraph.Node readNode(final DataInputStream in, final ConfigurationPlan[] plans,
+                                                    final List<ConfigurationGraph.Node> previous) throws IOException {
+        ConfigurationPlan plan = plans[in.readInt()];
+        String methodName = in.readUTF();
+        ConfigurationGraph.Node node;
+        if (methodName.isEmpty()) {
+            Class<?> clazz = plan.getConfigurationClass();
+            node = new ConfigurationGraph.Node(plan, null, clazz.getSimpleName(), clazz);
+        } else {
+            FactoryMethod factoryMethod = null;
+            for (FactoryMethod candidate : plan.getFactoryMethods()) {
+                if (candidate.getName().equals(methodName)) {
+                    factoryMethod = candidate;
+                }
+            }
+            if (factoryMethod == null) {
+                return null;
+            }
+            node = new ConfigurationGraph.Node(plan, factoryMethod, methodName, factoryMethod.getReturnType());
+        }
+        int dependencyCount = in.readInt();
+        for (int i = 0; i < dependencyCount; i++) {
+            node.getDependencies().add(previous.get(in.readInt()));
+        }
+        String[] bindings = new String[in.readInt()];
+        for (int i = 0; i < bindings.length; i++) {
+            bindings[i] = in.readUTF();
+        }
+        if (node.getFactoryMethod() != null) {
+            if (bindings.length != node.getFactoryMethod().getParameterTypes().length) {
+                return null;
+            }
+            node.setBindings(bindings);
+        }
+        return node;
+    }
+
+    /**
+     * @return the CRC-32 of the class file, or {@link #NO_CHECKSUM} if the class file can't be read
+     */
+    private static long checksum(final Class<?> clazz) {
+        return CHECKSUMS.get(clazz);
+    }
+
+    private static long computeChecksum(final Class<?> clazz) {
+        String name = clazz.getName();
+        try (InputStream in = clazz.getResourceAsStream(name.substring(name.lastIndexOf('.') + 1) + ".class")) {
+            if (in == null) {
+                return NO_CHECKSUM;
+            }
+            CRC32 crc = new CRC32();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                crc.update(buffer, 0, read);
+            }
+            return crc.getValue();
+        } catch (IOException e) {
+            return NO_CHECKSUM;
+        }
+    }
+}
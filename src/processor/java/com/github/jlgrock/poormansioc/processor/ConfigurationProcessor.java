@@ -0,0 +1,342 @@
+package com.github.jlgrock.poormansioc.processor;
+
+import com.github.jlgrock.poormansioc.Configuration;
+import com.github.jlgrock.poormansioc.ConfigurationIndex;
+import com.github.jlgrock.poormansioc.ContextInitializer;
+import com.github.jlgrock.poormansioc.DestroyMethod;
+import com.github.jlgrock.poormansioc.Evictable;
+import com.github.jlgrock.poormansioc.EvictionType;
+import com.github.jlgrock.poormansioc.Lazy;
+import com.github.jlgrock.poormansioc.PoorMansIocContext;
+import com.github.jlgrock.poormansioc.Qualifier;
+import com.github.jlgrock.poormansioc.Scope;
+import com.github.jlgrock.poormansioc.ScopeType;
+import com.github.jlgrock.poormansioc.TypeToken;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.type.WildcardType;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Generates a {@link ContextInitializer} for each {@link Configuration} class.  The initializer instantiates the
+ * class and calls its factory methods directly, and resolves their parameters by type and {@link Qualifier} the same
+ * way that {@link PoorMansIocContext#addConfigurationClass(Class)} does - but without reflection, so it also works in
+ * environments where reflection isn't available, such as native images.
+ * <p>
+ * Like {@link PoorMansIocContext#addConfigurationClass(Class)}, this doesn't build a dependency tree.  The factory
+ * methods are called in the order that they are declared in.
+ * <p>
+ * The parameters are not bound to beans when the initializer is generated.  Which beans a parameter can match is
+ * only known once every initializer has run, along with the beans added directly, those of a parent context and
+ * those of a reloaded class, and a binding made without them could pick a different bean than the context would,
+ * or miss that the match is ambiguous.  The table from types to beans is the one the context builds as the
+ * initializer registers each bean, so resolving a parameter is a lookup in that table rather than reflection.
+ * <p>
+ * The names of the configuration classes are also written to {@link ConfigurationIndex#RESOURCE}, which is what
+ * {@link PoorMansIocContext#addDiscoveredConfigurationClasses()} reads.  It runs the initializers of the classes it
+ * finds rather than reflecting over them, in the order given by the types of the beans that each initializer registers
+ * and the types that it looks up while it does.
+ */
+@SupportedAnnotationTypes("com.github.jlgrock.poormansioc.Configuration")
+public class ConfigurationProcessor extends AbstractProcessor {
+    /**
+     * Appended to the name of the configuration class to get the name of the initializer
+     */
+    public static final String INITIALIZER_SUFFIX = ConfigurationIndex.INITIALIZER_SUFFIX;
+
+    private static final String SUPPLIER = Supplier.class.getCanonicalName();
+
+    private static final String COMPLETABLE_FUTURE = CompletableFuture.class.getCanonicalName();
+
+    private final Set<String> indexed = new TreeSet<>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(final Set<? extends TypeElement> annotations, final RoundEnvironment roundEnv) {
+        for (Element element : roundEnv.getElementsAnnotatedWith(Configuration.class)) {
+            if (element.getKind() != ElementKind.CLASS) {
+                error(element, "Only classes can be annotated with @Configuration");
+            } else if (isValid((TypeElement) element)) {
+                generateInitializer((TypeElement) element);
+                indexed.add(processingEnv.getElementUtils().getBinaryName((TypeElement) element).toString());
+            }
+        }
+        if (roundEnv.processingOver() && !indexed.isEmpty()) {
+            writeIndex();
+        }
+        return true;
+    }
+
+    /**
+     * Lists the configuration classes in {@link ConfigurationIndex#RESOURCE}, so that they can be found at runtime
+     * without scanning the classpath.
+     */
+    private void writeIndex() {
+        try {
+            FileObject file = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "",
+                    ConfigurationIndex.RESOURCE);
+            try (Writer writer = file.openWriter(); PrintWriter out = new PrintWriter(writer)) {
+                for (String name : indexed) {
+                    out.println(name);
+                }
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "Unable to write `" + ConfigurationIndex.RESOURCE + "`: " + e.getMessage());
+        }
+    }
+
+    private boolean isValid(final TypeElement clazz) {
+        Set<Modifier> modifiers = clazz.getModifiers();
+        if (!modifiers.contains(Modifier.PUBLIC) || modifiers.contains(Modifier.ABSTRACT)) {
+            error(clazz, "Configuration class `" + clazz.getQualifiedName() + "` must be public and not abstract");
+            return false;
+        }
+        if (clazz.getEnclosingElement().getKind() != ElementKind.PACKAGE && !modifiers.contains(Modifier.STATIC)) {
+            error(clazz, "Can't instantiate class `" + clazz.getQualifiedName() + "` because it is a non-static inner class");
+            return false;
+        }
+        List<ExecutableElement> constructors = ElementFilter.constructorsIn(clazz.getEnclosedElements());
+        boolean hasPublicConstructor = constructors.stream().anyMatch(constructor ->
+                constructor.getModifiers().contains(Modifier.PUBLIC) && constructor.getParameters().isEmpty());
+        if (!hasPublicConstructor) {
+            error(clazz, "Configuration class `" + clazz.getQualifiedName() + "` must have a public no-argument constructor");
+            return false;
+        }
+        for (ExecutableElement method : factoryMethods(clazz)) {
+            for (VariableElement parameter : method.getParameters()) {
+                if (parameter.asType().getKind().isPrimitive()) {
+                    error(parameter, "Primitive parameters can't be resolved from the context");
+                    return false;
+                }
+            }
+            if (method.getReturnType().getKind() == TypeKind.VOID) {
+                error(method, "Factory method `" + method.getSimpleName() + "` must return a bean");
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private List<ExecutableElement> factoryMethods(final TypeElement clazz) {
+        List<ExecutableElement> methods = ElementFilter.methodsIn(clazz.getEnclosedElements());
+        methods.removeIf(method -> !method.getModifiers().contains(Modifier.PUBLIC));
+        return methods;
+    }
+
+    private void generateInitializer(final TypeElement clazz) {
+        PackageElement packageElement = processingEnv.getElementUtils().getPackageOf(clazz);
+        String packageName = packageElement.isUnnamed() ? "" : packageElement.getQualifiedName().toString();
+        String initializerName = initializerSimpleName(clazz);
+        String qualifiedName = packageName.isEmpty() ? initializerName : packageName + "." + initializerName;
+        try {
+            JavaFileObject file = processingEnv.getFiler().createSourceFile(qualifiedName, clazz);
+            try (Writer writer = file.openWriter(); PrintWriter out = new PrintWriter(writer)) {
+                writeInitializer(out, packageName, initializerName, clazz);
+            }
+        } catch (IOException e) {
+            error(clazz, "Unable to write `" + qualifiedName + "`: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return the simple names of the class and the classes enclosing it, joined with underscores, plus the suffix
+     */
+    static String initializerSimpleName(final TypeElement clazz) {
+        StringBuilder name = new StringBuilder(clazz.getSimpleName());
+        for (Element enclosing = clazz.getEnclosingElement(); enclosing.getKind() != ElementKind.PACKAGE;
+             enclosing = enclosing.getEnclosingElement()) {
+            name.insert(0, enclosing.getSimpleName() + "_");
+        }
+        return name.append(INITIALIZER_SUFFIX).toString();
+    }
+
+    private void writeInitializer(final PrintWriter out, final String packageName, final String initializerName,
+                                  final TypeElement clazz) {
+        String context = PoorMansIocContext.class.getCanonicalName();
+        if (!packageName.isEmpty()) {
+            out.println("package " + packageName + ";");
+            out.println();
+        }
+        out.println("/**");
+        out.println(" * Registers the beans of {@link " + clazz.getQualifiedName() + "}.  Generated by "
+                + getClass().getSimpleName() + " - do not edit.");
+        out.println(" */");
+        out.println("public final class " + initializerName + " implements "
+                + ContextInitializer.class.getCanonicalName() + " {");
+        out.println("    @Override");
+        out.println("    public void initialize(final " + context + " context) {");
+        out.println("        final " + clazz.getQualifiedName() + " config = new " + clazz.getQualifiedName() + "();");
+        out.println("        context.addBean(config, \"" + clazz.getSimpleName() + "\");");
+        boolean lazyClass = clazz.getAnnotation(Lazy.class) != null;
+        Set<String> beanTypes = new LinkedHashSet<>();
+        Set<String> requiredTypes = new LinkedHashSet<>();
+        beanTypes.add(clazz.getQualifiedName().toString());
+        for (ExecutableElement method : factoryMethods(clazz)) {
+            String name = method.getSimpleName().toString();
+            String call = "config." + name + "(" + parameters(method, "context") + ")";
+            String recipe = "target -> config." + name + "(" + parameters(method, "target") + ")";
+            Scope scope = method.getAnnotation(Scope.class);
+            ScopeType scopeType = scope == null ? ScopeType.SINGLETON : scope.value();
+            TypeMirror futureType = typeArgument(method.getReturnType(), COMPLETABLE_FUTURE);
+            TypeMirror beanType = futureType == null ? method.getReturnType() : futureType;
+            Evictable evictable = method.getAnnotation(Evictable.class);
+            String type = isParameterized(beanType) ? typeToken(beanType)
+                    : TypeToken.class.getCanonicalName() + ".of(" + erasure(beanType) + ".class)";
+            beanTypes.add(erasure(beanType));
+            DestroyMethod destroy = method.getAnnotation(DestroyMethod.class);
+            String destroyMethod = destroy == null ? "null" : "\"" + escape(destroy.value()) + "\"";
+            if (scopeType == ScopeType.SINGLETON && evictable != null) {
+                out.println("        context.addEvictableBean(\"" + name + "\", " + type + ", "
+                        + EvictionType.class.getCanonicalName() + "." + evictable.value() + ", " + evictable.weight()
+                        + "L, " + recipe + (futureType == null ? "" : ".join()") + ");");
+            } else if (scopeType == ScopeType.SINGLETON && !lazyClass && method.getAnnotation(Lazy.class) == null) {
+                requiredTypes.addAll(parameterTypes(method));
+                if (futureType != null) {
+                    out.println("        context.addAsyncBean(\"" + name + "\", " + type + ", " + destroyMethod
+                            + ", " + call + ");");
+                } else {
+                    out.println("        context.addBean(" + call + ", \"" + name + "\", " + type + ", "
+                            + destroyMethod + ");");
+                }
+            } else {
+                int poolSize = scope == null ? Scope.DEFAULT_POOL_SIZE : scope.poolSize();
+                out.println("        context.addBeanFactory(\"" + name + "\", " + type + ", "
+                        + ScopeType.class.getCanonicalName() + "." + scopeType + ", " + poolSize + ", "
+                        + destroyMethod + ", " + recipe + (futureType == null ? "" : ".join()") + ");");
+            }
+        }
+        out.println("    }");
+        writeTypes(out, "getBeanTypes", beanTypes);
+        writeTypes(out, "getRequiredTypes", requiredTypes);
+        out.println("}");
+    }
+
+    private static void writeTypes(final PrintWriter out, final String methodName, final Set<String> types) {
+        out.println();
+        out.println("    @Override");
+        out.println("    public java.lang.Class<?>[] " + methodName + "() {");
+        StringBuilder array = new StringBuilder();
+        for (String type : types) {
+            array.append(array.length() == 0 ? "" : ", ").append(type).append(".class");
+        }
+        out.println("        return new java.lang.Class<?>[] {" + array + "};");
+        out.println("    }");
+    }
+
+    /**
+     * @return the classes of the beans that the parameters of the method are looked up as
+     */
+    private Set<String> parameterTypes(final ExecutableElement method) {
+        Set<String> types = new LinkedHashSet<>();
+        for (VariableElement parameter : method.getParameters()) {
+            TypeMirror providedType = typeArgument(parameter.asType(), SUPPLIER);
+            types.add(erasure(providedType == null ? parameter.asType() : providedType));
+        }
+        return types;
+    }
+
+    /**
+     * @param context the name of the variable holding the context that the parameters are looked up in
+     */
+    private String parameters(final ExecutableElement method, final String context) {
+        StringBuilder parameters = new StringBuilder();
+        for (VariableElement parameter : method.getParameters()) {
+            if (parameters.length() > 0) {
+                parameters.append(", ");
+            }
+            TypeMirror type = parameter.asType();
+            TypeMirror providedType = typeArgument(type, SUPPLIER);
+            if (providedType != null && isParameterized(providedType)) {
+                parameters.append(context).append(".getProvider(").append(typeToken(providedType));
+            } else if (providedType != null) {
+                parameters.append(context).append(".<").append(providedType).append(">getProvider(")
+                        .append(erasure(providedType)).append(".class");
+            } else if (isParameterized(type)) {
+                parameters.append(context).append(".getBeanByType(").append(typeToken(type));
+            } else {
+                parameters.append(context).append(".<").append(type).append(">getBeanByType(").append(erasure(type))
+                        .append(".class");
+            }
+            Qualifier qualifier = parameter.getAnnotation(Qualifier.class);
+            if (qualifier != null) {
+                parameters.append(", \"").append(escape(qualifier.value())).append("\"");
+            }
+            parameters.append(")");
+        }
+        return parameters.toString();
+    }
+
+    /**
+     * @return the type of bean of a type such as `Supplier<Bean>` or `CompletableFuture<Bean>`, null if the type
+     * isn't the given generic type
+     */
+    private TypeMirror typeArgument(final TypeMirror type, final String genericType) {
+        if (type.getKind() != TypeKind.DECLARED || !genericType.equals(erasure(type))) {
+            return null;
+        }
+        TypeMirror object = processingEnv.getElementUtils().getTypeElement(Object.class.getName()).asType();
+        List<? extends TypeMirror> arguments = ((DeclaredType) type).getTypeArguments();
+        if (arguments.isEmpty()) {
+            return SUPPLIER.equals(genericType) ? null : object;
+        }
+        TypeMirror provided = arguments.get(0);
+        if (provided.getKind() == TypeKind.WILDCARD) {
+            provided = ((WildcardType) provided).getExtendsBound();
+        }
+        return provided == null || provided.getKind() != TypeKind.DECLARED ? object : provided;
+    }
+
+    /**
+     * @return true if the type has type arguments, which are kept by looking it up with a type token
+     */
+    private static boolean isParameterized(final TypeMirror type) {
+        return type.getKind() == TypeKind.DECLARED && !((DeclaredType) type).getTypeArguments().isEmpty();
+    }
+
+    private static String typeToken(final TypeMirror type) {
+        return "new " + TypeToken.class.getCanonicalName() + "<" + type + ">() { }";
+    }
+
+    private String erasure(final TypeMirror type) {
+        return processingEnv.getTypeUtils().erasure(type).toString();
+    }
+
+    private static String escape(final String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    private void error(final Element element, final String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+}
@@ -1,9 +1,32 @@
 package com.github.jlgrock.poormansioc;
 
+import com.github.jlgrock.poormansioc.processor.ConfigurationProcessorTest;
+import com.github.jlgrock.poormansioc.processor.ConfigurationProcessorTest_CarConfiguration_Initializer;
+import com.github.jlgrock.poormansioc.processor.ConfigurationProcessorTest_EngineConfiguration_Initializer;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
 
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.junit.Assert.assertThat;
@@ -222,4 +245,1235 @@ public class PoorMansIocContextTest {
 
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testQualifierMustMatchType() {
+        poorMansIocContext.addBean(new DogHouse().myBestFriend(), "myBestFriend");
+        poorMansIocContext.addBean(new CatHouse().myPet(), "myPet");
+        try {
+            poorMansIocContext.getBeanByType(Feline.class, "myBestFriend");
+            assert(false); // should throw exception
+        } catch(Exception e) {
+            assertTrue(e instanceof PoorMansIocRuntimeException);
+            String expectedString = "Unable to match on class `interface com.github.jlgrock.poormansioc.PoorMansIocContextTest$Feline` " +
+                    "with qualifier `myBestFriend`.";
+            assertThat(e.getMessage(), equalTo(expectedString));
+        }
+    }
+
+    @Test
+    public void testQualifierOnUnknownType() {
+        try {
+            poorMansIocContext.getBeanByType(Yard.class, "yardArea");
+            assert(false); // should throw exception
+        } catch(Exception e) {
+            assertTrue(e instanceof PoorMansIocRuntimeException);
+        }
+    }
+
+    @Test
+    public void testAddBeans() {
+        poorMansIocContext.addBean(new Bird(), "bird");
+        Map<String, Object> beans = new LinkedHashMap<>();
+        beans.put("dog", new Dog());
+        beans.put("cat", new Cat());
+        poorMansIocContext.addBeans(beans);
+
+        List<Pet> pets = poorMansIocContext.getAllBeansByType(Pet.class);
+        assertThat(pets.size(), equalTo(3));
+        assertTrue(pets.get(0) instanceof Bird);
+        assertTrue(pets.get(2) instanceof Cat);
+        Canine dog = poorMansIocContext.getBeanByType(Canine.class);
+        assertTrue(dog == poorMansIocContext.getBeanByName("dog"));
+    }
+
+    @Test
+    public void testAddBeansIsAllOrNothing() {
+        poorMansIocContext.addBean(new Bird(), "bird");
+        Map<String, Object> beans = new LinkedHashMap<>();
+        beans.put("dog", new Dog());
+        beans.put("bird", new Bird());
+        try {
+            poorMansIocContext.addBeans(beans);
+            assert(false); // should throw exception
+        } catch(Exception e) {
+            assertTrue(e instanceof PoorMansIocRuntimeException);
+            assertThat(e.getMessage(), equalTo("Class with name `bird` already exists"));
+        }
+        assertTrue(poorMansIocContext.getBeanByName("dog") == null);
+        List<Pet> pets = poorMansIocContext.getAllBeansByType(Pet.class);
+        assertThat(pets.size(), equalTo(1));
+    }
+
+    public static class Kitten extends Cat {}
+
+    @Test
+    public void testSupertypesAreRegistered() {
+        poorMansIocContext.addBean(new Kitten(), "kitten");
+        Cat cat = poorMansIocContext.getBeanByType(Cat.class);
+        assertTrue(cat instanceof Kitten);
+        Animal animal = poorMansIocContext.getBeanByType(Animal.class, "kitten");
+        assertTrue(animal instanceof Kitten);
+        List<Pet> pets = poorMansIocContext.getAllBeansByType(Pet.class);
+        assertThat(pets.size(), equalTo(1));
+    }
+
+    @Test
+    public void testAssignableFallback() {
+        poorMansIocContext.addBean(new Kitten(), "kitten");
+        Object object = poorMansIocContext.getBeanByType(Object.class);
+        assertTrue(object instanceof Kitten);
+
+        poorMansIocContext.addBean(new Bird(), "bird");
+        List<Object> objects = poorMansIocContext.getAllBeansByType(Object.class);
+        assertThat(objects.size(), equalTo(2));
+    }
+
+    public static class BrokenHouse {
+        public Pet brokenPet() {
+            throw new IllegalStateException("no pets allowed");
+        }
+    }
+
+    @Test
+    public void testFactoryMethodFailure() {
+        try {
+            poorMansIocContext.addConfigurationClass(BrokenHouse.class);
+            assert(false); // should throw exception
+        } catch(Exception e) {
+            assertTrue(e instanceof PoorMansIocRuntimeException);
+            assertThat(e.getMessage(), equalTo("Method `brokenPet` on object " +
+                    "`com.github.jlgrock.poormansioc.PoorMansIocContextTest$BrokenHouse` threw an exception"));
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    public static class FailingErrorHouse {
+        public Pet erroneousPet() {
+            throw new AssertionError("not a pet");
+        }
+    }
+
+    public static class NestedFailureHouse {
+        public Pet nestedPet() {
+            throw new PoorMansIocRuntimeException("nested wiring failed");
+        }
+    }
+
+    @Test
+    public void testFactoryMethodErrorsAreNotWrapped() {
+        try {
+            poorMansIocContext.addConfigurationClass(FailingErrorHouse.class);
+            assert(false); // should throw exception
+        } catch(AssertionError e) {
+            assertThat(e.getMessage(), equalTo("not a pet"));
+        }
+        try {
+            poorMansIocContext.addConfigurationClass(NestedFailureHouse.class);
+            assert(false); // should throw exception
+        } catch(PoorMansIocRuntimeException e) {
+            assertThat(e.getMessage(), equalTo("nested wiring failed"));
+        }
+    }
+
+    @Test
+    public void testAddConfigClassesInAnyOrder() {
+        poorMansIocContext.addConfigurationClasses(Arrays.asList(QualifiedAnimalYard.class, CatHouse.class, DogHouse.class));
+        Yard yard = poorMansIocContext.getBeanByType(Yard.class, "yardArea");
+        assertTrue(yard instanceof DogYard);
+        List<Pet> pets = poorMansIocContext.getAllBeansByType(Pet.class);
+        assertThat(pets.size(), equalTo(2));
+    }
+
+    @Test
+    public void testWiringPlan() throws Exception {
+        List<Class<?>> classes = Arrays.asList(QualifiedAnimalYard.class, CatHouse.class, DogHouse.class);
+        File planFile = File.createTempFile("poormansioc", ".plan");
+        planFile.delete();
+        try {
+            poorMansIocContext.addConfigurationClasses(classes, planFile);
+            assertTrue(WiringPlan.read(planFile, classes) != null);
+            assertTrue(WiringPlan.read(planFile, Arrays.asList(CatHouse.class, DogHouse.class, QualifiedAnimalYard.class)) == null);
+
+            PoorMansIocContext restarted = new PoorMansIocContext();
+            restarted.addConfigurationClasses(classes, planFile);
+            Yard yard = restarted.getBeanByType(Yard.class, "yardArea");
+            assertTrue(yard instanceof DogYard);
+            List<Pet> pets = restarted.getAllBeansByType(Pet.class);
+            assertThat(pets.size(), equalTo(2));
+
+            Files.write(planFile.toPath(), new byte[] {1, 2, 3});
+            assertTrue(WiringPlan.read(planFile, classes) == null);
+            PoorMansIocContext rebuilt = new PoorMansIocContext();
+            rebuilt.addConfigurationClasses(classes, planFile);
+            assertTrue(rebuilt.getBeanByType(Yard.class, "yardArea") instanceof DogYard);
+            assertTrue(WiringPlan.read(planFile, classes) != null);
+        } finally {
+            planFile.delete();
+        }
+    }
+
+    public static class Kennel {
+        private final Canine dog;
+
+        public Kennel(final Canine dogIn) {
+            dog = dogIn;
+        }
+    }
+
+    public static class KennelHouse {
+        public Kennel kennel(final Canine dog) {
+            return new Kennel(dog);
+        }
+    }
+
+    @Test
+    public void testWiringPlanIsCheckedAgainstTheContext() throws Exception {
+        List<Class<?>> classes = Collections.<Class<?>>singletonList(KennelHouse.class);
+        File planFile = File.createTempFile("poormansioc", ".plan");
+        planFile.delete();
+        try {
+            poorMansIocContext.addBean(new Dog(), "rex");
+            poorMansIocContext.addConfigurationClasses(classes, planFile);
+
+            // rex is no longer a dog, so the parameter is bound again
+            PoorMansIocContext changed = new PoorMansIocContext();
+            Dog fido = new Dog();
+            changed.addBean(new Cat(), "rex");
+            changed.addBean(fido, "fido");
+            changed.addConfigurationClasses(classes, planFile);
+            assertTrue(changed.<Kennel>getBeanByName("kennel").dog == fido);
+
+            // with two dogs, resolving the parameter afresh is ambiguous, so replaying the plan must fail too
+            PoorMansIocContext ambiguous = new PoorMansIocContext();
+            ambiguous.addBean(new Dog(), "rex");
+            ambiguous.addBean(new Dog(), "fido");
+            try {
+                ambiguous.addConfigurationClasses(classes, planFile);
+                assert(false); // should throw exception
+            } catch(Exception e) {
+                assertTrue(e instanceof PoorMansIocRuntimeException);
+            }
+        } finally {
+            planFile.delete();
+        }
+    }
+
+    @Test
+    public void testWiringPlanWriteFailureLeavesNoTemporaryFile() throws Exception {
+        List<Class<?>> classes = Arrays.asList(QualifiedAnimalYard.class, CatHouse.class, DogHouse.class);
+        File directory = Files.createTempDirectory("poormansioc").toFile();
+        File planFile = new File(directory, "wiring.plan");
+        // a non-empty directory where the plan should go can't be replaced, so the write fails
+        File blocker = new File(planFile, "blocker");
+        try {
+            assertTrue(blocker.mkdirs());
+            poorMansIocContext.addConfigurationClasses(classes, planFile);
+            assertTrue(poorMansIocContext.getBeanByType(Yard.class, "yardArea") instanceof DogYard);
+            assertThat(Arrays.asList(directory.list()), equalTo(Collections.singletonList("wiring.plan")));
+        } finally {
+            blocker.delete();
+            planFile.delete();
+            directory.delete();
+        }
+    }
+
+    public static class Egg {}
+
+    public static class Chicken {}
+
+    public static class ChickenAndEgg {
+        public Egg egg(final Chicken chicken) {
+            return new Egg();
+        }
+
+        public Chicken chicken(final Egg egg) {
+            return new Chicken();
+        }
+    }
+
+    @Test
+    public void testAddConfigClassesCircularDependency() {
+        try {
+            poorMansIocContext.addConfigurationClasses(Collections.singletonList(ChickenAndEgg.class));
+            assert(false); // should throw exception
+        } catch(Exception e) {
+            assertTrue(e instanceof PoorMansIocRuntimeException);
+            assertTrue(e.getMessage().startsWith("Circular dependency found: "));
+            assertTrue(e.getMessage().contains("`egg`"));
+            assertTrue(e.getMessage().contains("`chicken`"));
+        }
+        assertTrue(poorMansIocContext.getBeanByName("ChickenAndEgg") == null);
+    }
+
+    public static class LazyHouse {
+        static final AtomicInteger CREATED = new AtomicInteger();
+
+        @Lazy
+        public Pet lazyPet(final Dog dog) {
+            CREATED.incrementAndGet();
+            return new Cat();
+        }
+    }
+
+    @Test
+    public void testLazyBean() {
+        LazyHouse.CREATED.set(0);
+        poorMansIocContext.addConfigurationClass(LazyHouse.class);
+        assertThat(LazyHouse.CREATED.get(), equalTo(0));
+
+        // the dependency only has to be there when the bean is first retrieved
+        poorMansIocContext.addConfigurationClass(DogHouse.class);
+        Pet pet = poorMansIocContext.getBeanByType(Pet.class, "lazyPet");
+        assertTrue(pet instanceof Cat);
+        assertTrue(poorMansIocContext.getBeanByName("lazyPet") == pet);
+        assertThat(LazyHouse.CREATED.get(), equalTo(1));
+    }
+
+    @Test
+    public void testLazyBeanConcurrentFirstAccess() throws Exception {
+        LazyHouse.CREATED.set(0);
+        poorMansIocContext.addConfigurationClass(DogHouse.class);
+        poorMansIocContext.addConfigurationClass(LazyHouse.class);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<Object>> results = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            results.add(executor.submit(() -> poorMansIocContext.getBeanByName("lazyPet")));
+        }
+        Object first = results.get(0).get();
+        for (Future<Object> result : results) {
+            assertTrue(result.get() == first);
+        }
+        executor.shutdown();
+        assertThat(LazyHouse.CREATED.get(), equalTo(1));
+    }
+
+    public static class ProviderHouse {
+        public Cat providedCat() {
+            return new Cat();
+        }
+
+        @Scope(ScopeType.PROTOTYPE)
+        public Bird providedBird() {
+            return new Bird();
+        }
+
+        public List<Supplier<? extends Pet>> petProviders(final Supplier<Cat> cat,
+                                                          @Qualifier("providedBird") final Supplier<? extends Pet> bird) {
+            return Arrays.asList(cat, bird);
+        }
+    }
+
+    @Test
+    public void testProvider() {
+        poorMansIocContext.addConfigurationClasses(Arrays.asList(ProviderHouse.class));
+        Supplier<Cat> cat = poorMansIocContext.getProvider(Cat.class);
+        assertTrue(cat.get() == poorMansIocContext.getBeanByName("providedCat"));
+        assertTrue(cat.get() == cat.get());
+        Supplier<Pet> bird = poorMansIocContext.getProvider(Pet.class, "providedBird");
+        assertTrue(bird.get() instanceof Bird);
+        assertTrue(bird.get() != bird.get());
+
+        List<Supplier<? extends Pet>> providers = poorMansIocContext.getBeanByName("petProviders");
+        assertTrue(providers.get(0).get() == cat.get());
+        assertTrue(providers.get(1).get() instanceof Bird);
+        assertTrue(providers.get(1).get() != providers.get(1).get());
+    }
+
+    @Test
+    public void testProviderNotFound() {
+        try {
+            poorMansIocContext.getProvider(Cat.class);
+            assert(false); // should throw exception
+        } catch(Exception e) {
+            assertTrue(e instanceof PoorMansIocRuntimeException);
+        }
+    }
+
+    public static class GenericHouse {
+        public Map<String, Cat> catsByName() {
+            return Collections.singletonMap("tom", new Cat());
+        }
+
+        public Map<String, Dog> dogsByName() {
+            return Collections.singletonMap("rex", new Dog());
+        }
+
+        public List<Animal> animals(final Map<String, Cat> cats, final Supplier<Map<String, ? extends Canine>> dogs) {
+            List<Animal> animals = new ArrayList<>(cats.values());
+            animals.addAll(dogs.get().values());
+            return animals;
+        }
+    }
+
+    @Test
+    public void testGenericTypes() {
+        poorMansIocContext.addConfigurationClasses(Arrays.asList(GenericHouse.class));
+        Map<String, Cat> cats = poorMansIocContext.getBeanByType(new TypeToken<Map<String, Cat>>() { });
+        assertTrue(cats == poorMansIocContext.getBeanByName("catsByName"));
+        assertTrue(poorMansIocContext.getBeanByType(new TypeToken<Map<String, ? extends Animal>>() { }, "dogsByName")
+                == poorMansIocContext.getBeanByName("dogsByName"));
+        assertTrue(poorMansIocContext.getProvider(new TypeToken<Map<String, Dog>>() { }, null).get()
+                == poorMansIocContext.getBeanByName("dogsByName"));
+        List<Animal> animals = poorMansIocContext.getBeanByType(new TypeToken<List<Animal>>() { });
+        assertThat(animals.size(), equalTo(2));
+
+        try {
+            poorMansIocContext.getBeanByType(Map.class);
+            assert(false); // should throw exception
+        } catch(Exception e) {
+            assertTrue(e instanceof PoorMansIocRuntimeException);
+        }
+        try {
+            poorMansIocContext.getBeanByType(new TypeToken<Map<String, Dog>>() { }, "catsByName");
+            assert(false); // should throw exception
+        } catch(Exception e) {
+            assertTrue(e instanceof PoorMansIocRuntimeException);
+        }
+    }
+
+    public static class EvictableHouse {
+        private static final AtomicInteger CREATED = new AtomicInteger();
+
+        @Evictable(EvictionType.LEAST_RECENTLY_USED)
+        public Cat evictableCat() {
+            CREATED.incrementAndGet();
+            return new Cat();
+        }
+
+        @Evictable(EvictionType.LEAST_RECENTLY_USED)
+        public Dog evictableDog() {
+            CREATED.incrementAndGet();
+            return new Dog();
+        }
+
+        @Evictable(EvictionType.WEAK)
+        public Bird evictableBird() {
+            return new Bird();
+        }
+    }
+
+    @Test
+    public void testEvictableBeans() {
+        EvictableHouse.CREATED.set(0);
+        poorMansIocContext.addConfigurationClasses(Arrays.asList(EvictableHouse.class));
+        BeanCache cache = poorMansIocContext.getBeanCache();
+        cache.setBudget(1);
+        assertThat(EvictableHouse.CREATED.get(), equalTo(0));
+
+        Cat cat = poorMansIocContext.getBeanByType(Cat.class);
+        assertTrue(cat == poorMansIocContext.getBeanByType(Cat.class));
+        Dog dog = poorMansIocContext.getBeanByType(Dog.class);
+        assertTrue(dog == poorMansIocContext.getBeanByName("evictableDog"));
+        assertTrue(cat != poorMansIocContext.getBeanByType(Cat.class));
+        assertThat(EvictableHouse.CREATED.get(), equalTo(3));
+        assertThat(cache.getWeight(), equalTo(1L));
+        assertThat(cache.getEvictions(), equalTo(2L));
+
+        Bird bird = poorMansIocContext.getBeanByType(Bird.class);
+        assertTrue(bird == poorMansIocContext.getBeanByType(Bird.class));
+        assertThat(cache.getHits(), equalTo(3L));
+        assertThat(cache.getMisses(), equalTo(4L));
+
+        cache.setBudget(0);
+        assertThat(cache.getWeight(), equalTo(0L));
+        assertTrue(poorMansIocContext.getBeanByType(Cat.class) instanceof Cat);
+        assertThat(EvictableHouse.CREATED.get(), equalTo(4));
+    }
+
+    public static class AsyncHouse {
+        public CompletableFuture<Cat> asyncCat() {
+            return CompletableFuture.supplyAsync(Cat::new);
+        }
+
+        public CompletableFuture<Dog> slowDog() {
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return new Dog();
+            });
+        }
+
+        public List<Pet> asyncPets(final Cat cat, @Qualifier("slowDog") final Pet dog) {
+            return Arrays.asList(cat, dog);
+        }
+    }
+
+    public static class NeverHouse {
+        public CompletableFuture<Bird> neverBird() {
+            return new CompletableFuture<>();
+        }
+    }
+
+    public static class FailingHouse {
+        public CompletableFuture<Bird> failingBird() {
+            CompletableFuture<Bird> future = new CompletableFuture<>();
+            future.completeExceptionally(new IllegalStateException("no bird"));
+            return future;
+        }
+    }
+
+    @Test
+    public void testAsyncFactoryMethods() {
+        poorMansIocContext.addConfigurationClasses(Arrays.asList(AsyncHouse.class));
+        List<Pet> pets = poorMansIocContext.getBeanByName("asyncPets");
+        assertTrue(pets.get(0) == poorMansIocContext.getBeanByType(Cat.class));
+        assertTrue(pets.get(1) == poorMansIocContext.getBeanByName("slowDog"));
+        assertTrue(poorMansIocContext.getBeanByType(Canine.class) instanceof Dog);
+    }
+
+    @Test
+    public void testAsyncTimeout() {
+        try {
+            poorMansIocContext.addConfigurationClass(NeverHouse.class, 10, TimeUnit.MILLISECONDS);
+            assert(false); // should throw exception
+        } catch(Exception e) {
+            assertTrue(e instanceof PoorMansIocRuntimeException);
+            assertThat(e.getMessage(), equalTo("Timed out waiting for the beans of `" + NeverHouse.class.getName() + "`"));
+        }
+        try {
+            poorMansIocContext.addConfigurationClass(FailingHouse.class, 1, TimeUnit.SECONDS);
+            assert(false); // should throw exception
+        } catch(Exception e) {
+            assertTrue(e instanceof PoorMansIocRuntimeException);
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        try {
+            poorMansIocContext.getBeanByName("failingBird");
+            assert(false); // should throw exception
+        } catch(Exception e) {
+            assertTrue(e instanceof PoorMansIocRuntimeException);
+            assertThat(e.getMessage(), equalTo("Unable to create bean `failingBird`"));
+        }
+    }
+
+    public static class Resource implements AutoCloseable {
+        private final List<String> closed;
+        private final String name;
+
+        public Resource(final List<String> closedIn, final String nameIn) {
+            closed = closedIn;
+            name = nameIn;
+        }
+
+        @Override
+        public void close() {
+            closed.add(name);
+        }
+    }
+
+    public static class Connection {
+        private final Resource pool;
+
+        public Connection(final Resource poolIn) {
+            pool = poolIn;
+        }
+
+        public void shutdown() {
+            pool.closed.add("connection");
+        }
+    }
+
+    public static class ResourceHouse {
+        public static final List<String> CLOSED = Collections.synchronizedList(new ArrayList<>());
+
+        public Resource pool() {
+            return new Resource(CLOSED, "pool");
+        }
+
+        public Resource cache() {
+            return new Resource(CLOSED, "cache");
+        }
+
+        @DestroyMethod("shutdown")
+        public Connection connection(@Qualifier("pool") final Resource pool) {
+            return new Connection(pool);
+        }
+
+        @Scope(ScopeType.PROTOTYPE)
+        public Resource prototypeResource() {
+            return new Resource(CLOSED, "prototype");
+        }
+    }
+
+    public static class SlowResource implements AutoCloseable {
+        @Override
+        public void close() throws InterruptedException {
+            Thread.sleep(5000);
+        }
+    }
+
+    @Test
+    public void testCloseInDependencyOrder() {
+        ResourceHouse.CLOSED.clear();
+        ContextMetrics metrics = new ContextMetrics();
+        poorMansIocContext.setListener(metrics);
+        poorMansIocContext.addConfigurationClasses(Arrays.asList(ResourceHouse.class));
+        poorMansIocContext.getBeanByName("prototypeResource");
+        poorMansIocContext.clear();
+
+        List<String> closed = ResourceHouse.CLOSED;
+        assertThat(closed.size(), equalTo(3));
+        assertTrue(closed.indexOf("connection") < closed.indexOf("pool"));
+        assertTrue(closed.contains("cache"));
+        assertTrue(metrics.snapshot().getClosingNanos().containsKey("connection"));
+        assertTrue(poorMansIocContext.getBeanByName("pool") == null);
+
+        // closing again has nothing left to close
+        poorMansIocContext.close();
+        assertThat(closed.size(), equalTo(3));
+    }
+
+    public static class PooledResourceHouse {
+        @Scope(value = ScopeType.POOLED, poolSize = 2)
+        public Resource pooledResource() {
+            return new Resource(ResourceHouse.CLOSED, "pooled");
+        }
+    }
+
+    @Test
+    public void testCloseIdlePooledInstances() {
+        ResourceHouse.CLOSED.clear();
+        poorMansIocContext.addConfigurationClass(PooledResourceHouse.class);
+        PooledBean<Resource> borrowed = poorMansIocContext.borrowBean(Resource.class);
+        poorMansIocContext.borrowBean(Resource.class).close();
+
+        // only the instance that was given back is closed, the borrowed one is still in use
+        poorMansIocContext.close();
+        assertThat(ResourceHouse.CLOSED, equalTo(Collections.singletonList("pooled")));
+        borrowed.close();
+        assertThat(ResourceHouse.CLOSED.size(), equalTo(1));
+    }
+
+    public static class ThreadResourceHouse {
+        @Scope(ScopeType.THREAD)
+        public Resource threadResource() {
+            return new Resource(ResourceHouse.CLOSED, "thread");
+        }
+    }
+
+    @Test
+    public void testCloseThreadScopedInstances() throws Exception {
+        ResourceHouse.CLOSED.clear();
+        poorMansIocContext.addConfigurationClass(ThreadResourceHouse.class);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            CountDownLatch bothThreads = new CountDownLatch(2);
+            List<Future<Object>> lookups = new ArrayList<>();
+            for (int i = 0; i < 2; i++) {
+                lookups.add(executor.submit(() -> {
+                    Object resource = poorMansIocContext.getBeanByName("threadResource");
+                    bothThreads.countDown();
+                    bothThreads.await();
+                    return resource;
+                }));
+            }
+            assertTrue(lookups.get(0).get() != lookups.get(1).get());
+
+            // the pool threads are still alive and never release their instances themselves
+            poorMansIocContext.close();
+            assertThat(ResourceHouse.CLOSED, equalTo(Arrays.asList("thread", "thread")));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    public static class SlowToCloseResource extends Resource {
+        public SlowToCloseResource(final List<String> closedIn, final String nameIn) {
+            super(closedIn, nameIn);
+        }
+
+        @Override
+        public void close() {
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            super.close();
+        }
+    }
+
+    @Test
+    public void testCloseInstancesAfterEverythingRegisteredBefore() {
+        List<String> closed = Collections.synchronizedList(new ArrayList<>());
+        poorMansIocContext.addBean(new Resource(closed, "first"), "first");
+        poorMansIocContext.addConfigurationClass(DogHouse.class);
+        poorMansIocContext.addBean(new SlowToCloseResource(closed, "last"), "last");
+        poorMansIocContext.close();
+        assertThat(closed, equalTo(Arrays.asList("last", "first")));
+    }
+
+    @Test
+    public void testCloseTimeout() {
+        poorMansIocContext.addBean(new SlowResource(), "slow");
+        long start = System.nanoTime();
+        try {
+            poorMansIocContext.close(50, TimeUnit.MILLISECONDS);
+            assert(false); // should throw exception
+        } catch(Exception e) {
+            assertTrue(e instanceof PoorMansIocRuntimeException);
+            assertThat(e.getMessage(), equalTo("Unable to close `slow`"));
+            assertTrue(e.getSuppressed()[0] instanceof TimeoutException);
+        }
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+    }
+
+    public static class ReloadHouse {
+        public static final List<String> CLOSED = Collections.synchronizedList(new ArrayList<>());
+
+        public Resource reloadable() {
+            return new Resource(CLOSED, "reloadable");
+        }
+    }
+
+    public static class ReloadDependentHouse {
+        @DestroyMethod("shutdown")
+        public Connection reloadConnection(@Qualifier("reloadable") final Resource resource) {
+            return new Connection(resource);
+        }
+
+        public Dog unrelatedDog() {
+            return new Dog();
+        }
+    }
+
+    @Test
+    public void testReloadConfigurationClass() {
+        ReloadHouse.CLOSED.clear();
+        poorMansIocContext.addConfigurationClasses(Arrays.asList(ReloadDependentHouse.class, ReloadHouse.class));
+        Resource resource = poorMansIocContext.getBeanByName("reloadable");
+        Connection connection = poorMansIocContext.getBeanByType(Connection.class);
+        Dog dog = poorMansIocContext.getBeanByType(Dog.class);
+
+        poorMansIocContext.reloadConfigurationClass(ReloadHouse.class);
+        Resource reloaded = poorMansIocContext.getBeanByType(Resource.class);
+        Connection reconnected = poorMansIocContext.getBeanByType(Connection.class);
+        assertTrue(reloaded != resource);
+        assertTrue(reconnected != connection);
+        assertTrue(reconnected.pool == reloaded);
+        assertTrue(poorMansIocContext.getBeanByType(Dog.class) == dog);
+        assertThat(ReloadHouse.CLOSED, equalTo(Arrays.asList("connection", "reloadable")));
+
+        try {
+            poorMansIocContext.reloadConfigurationClass(ResourceHouse.class);
+            assert(false); // should throw exception
+        } catch(Exception e) {
+            assertTrue(e instanceof PoorMansIocRuntimeException);
+        }
+    }
+
+    public static class BlockingReloadHouse {
+        public static final AtomicReference<CountDownLatch> ENTERED = new AtomicReference<>();
+        public static final CountDownLatch RELEASE = new CountDownLatch(1);
+
+        public Resource blockingResource() throws InterruptedException {
+            CountDownLatch entered = ENTERED.getAndSet(null);
+            if (entered != null) {
+                entered.countDown();
+                RELEASE.await();
+            }
+            return new Resource(new ArrayList<>(), "blockingResource");
+        }
+    }
+
+    public static class LazyDependentHouse {
+        @Lazy
+        public Connection lazyConnection(@Qualifier("blockingResource") final Resource resource) {
+            return new Connection(resource);
+        }
+    }
+
+    @Test
+    public void testReloadKeepsRecordsMadeWhileReloading() throws Exception {
+        poorMansIocContext.addConfigurationClass(BlockingReloadHouse.class);
+        poorMansIocContext.addConfigurationClass(LazyDependentHouse.class);
+        CountDownLatch entered = new CountDownLatch(1);
+        BlockingReloadHouse.ENTERED.set(entered);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> reload = executor.submit(() -> poorMansIocContext.reloadConfigurationClass(BlockingReloadHouse.class));
+            assertTrue(entered.await(5, TimeUnit.SECONDS));
+            // created from the old beans while the reload is in progress, so its dependency is recorded in the old
+            // version of the registry
+            Connection connection = poorMansIocContext.getBeanByName("lazyConnection");
+            BlockingReloadHouse.RELEASE.countDown();
+            reload.get(5, TimeUnit.SECONDS);
+
+            poorMansIocContext.reloadConfigurationClass(BlockingReloadHouse.class);
+            Connection reconnected = poorMansIocContext.getBeanByName("lazyConnection");
+            assertTrue(reconnected != connection);
+            assertTrue(reconnected.pool == poorMansIocContext.getBeanByName("blockingResource"));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    public static class Walker {
+        @Inject
+        private Dog dog;
+
+        @Inject
+        @Qualifier("cat")
+        private Pet pet;
+
+        private Supplier<Bird> bird;
+
+        @Inject
+        public void setBird(final Supplier<Bird> birdIn) {
+            bird = birdIn;
+        }
+    }
+
+    public static class CatWalker extends Walker {
+        private final Cat cat;
+
+        @Inject
+        public CatWalker(final Cat catIn) {
+            cat = catIn;
+        }
+    }
+
+    @Test
+    public void testInjectInto() {
+        Dog dog = new Dog();
+        Cat cat = new Cat();
+        Bird bird = new Bird();
+        poorMansIocContext.addBean(dog, "dog");
+        poorMansIocContext.addBean(cat, "cat");
+        poorMansIocContext.addBean(bird, "bird");
+
+        Walker walker = poorMansIocContext.injectInto(new Walker());
+        assertTrue(walker.dog == dog);
+        assertTrue(walker.pet == cat);
+        assertTrue(walker.bird.get() == bird);
+        Walker another = poorMansIocContext.injectInto(new Walker());
+        assertTrue(another.dog == dog);
+
+        CatWalker catWalker = poorMansIocContext.newInstance(CatWalker.class);
+        assertTrue(catWalker.cat == cat);
+        assertTrue(((Walker) catWalker).dog == dog);
+
+        poorMansIocContext.addBean(new Dog(), "anotherDog");
+        try {
+            poorMansIocContext.injectInto(new Walker());
+            assert(false); // should throw exception
+        } catch(Exception e) {
+            assertTrue(e instanceof PoorMansIocRuntimeException);
+        }
+    }
+
+    @Test
+    public void testInjectIntoSeveralContexts() {
+        Dog dog = new Dog();
+        Dog otherDog = new Dog();
+        poorMansIocContext.addBean(dog, "dog");
+        poorMansIocContext.addBean(new Cat(), "cat");
+        poorMansIocContext.addBean(new Bird(), "bird");
+        PoorMansIocContext other = new PoorMansIocContext();
+        other.addBean(otherDog, "dog");
+        other.addBean(new Cat(), "cat");
+        other.addBean(new Bird(), "bird");
+
+        Walker first = poorMansIocContext.injectInto(new Walker());
+        Walker otherWalker = other.injectInto(new Walker());
+        Walker second = poorMansIocContext.injectInto(new Walker());
+        assertTrue(first.dog == dog);
+        assertTrue(otherWalker.dog == otherDog);
+        assertTrue(second.dog == dog);
+        // the beans are only resolved once per context, however the contexts are interleaved
+        assertTrue(second.bird == first.bird);
+        assertTrue(other.injectInto(new Walker()).bird == otherWalker.bird);
+    }
+
+    public static class ScopedHouse {
+        @Scope(ScopeType.PROTOTYPE)
+        public Bird prototypeBird() {
+            return new Bird();
+        }
+
+        @Scope(ScopeType.THREAD)
+        public Dog threadDog() {
+            return new Dog();
+        }
+
+        @Scope(value = ScopeType.POOLED, poolSize = 2)
+        public Cat pooledCat() {
+            return new Cat();
+        }
+    }
+
+    @Test
+    public void testPrototypeScope() {
+        poorMansIocContext.addConfigurationClass(ScopedHouse.class);
+        Bird first = poorMansIocContext.getBeanByType(Bird.class);
+        Bird second = poorMansIocContext.getBeanByType(Bird.class);
+        assertTrue(first != second);
+    }
+
+    @Test
+    public void testThreadScope() throws Exception {
+        poorMansIocContext.addConfigurationClass(ScopedHouse.class);
+        Dog dog = poorMansIocContext.getBeanByType(Dog.class);
+        assertTrue(dog == poorMansIocContext.getBeanByName("threadDog"));
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Object otherThreadDog = executor.submit(() -> poorMansIocContext.getBeanByType(Dog.class)).get();
+        executor.shutdown();
+        assertTrue(otherThreadDog instanceof Dog);
+        assertTrue(otherThreadDog != dog);
+
+        poorMansIocContext.releaseThreadScopedBeans();
+        assertTrue(dog != poorMansIocContext.getBeanByType(Dog.class));
+    }
+
+    @Test
+    public void testPooledScope() {
+        poorMansIocContext.addConfigurationClass(ScopedHouse.class);
+        Cat first;
+        Cat second;
+        try (PooledBean<Cat> one = poorMansIocContext.borrowBean(Cat.class);
+             PooledBean<Cat> two = poorMansIocContext.borrowBean(Cat.class)) {
+            first = one.get();
+            second = two.get();
+            assertTrue(first != second);
+        }
+        try (PooledBean<Cat> again = poorMansIocContext.borrowBean(Cat.class, "pooledCat")) {
+            assertTrue(again.get() == first || again.get() == second);
+        }
+        try {
+            poorMansIocContext.getBeanByType(Cat.class);
+            assert(false); // should throw exception
+        } catch(Exception e) {
+            assertTrue(e instanceof PoorMansIocRuntimeException);
+            assertThat(e.getMessage(), equalTo("Bean `pooledCat` is pooled and has to be borrowed"));
+        }
+    }
+
+    @Test
+    public void testMetrics() {
+        ContextMetrics metrics = new ContextMetrics();
+        poorMansIocContext.setListener(metrics);
+        try {
+            poorMansIocContext.addConfigurationClass(DogHouse.class);
+            poorMansIocContext.addConfigurationClass(CatHouse.class);
+            poorMansIocContext.getBeanByType(Dog.class);
+            poorMansIocContext.getBeanByType(Dog.class);
+            poorMansIocContext.getBeanByName("myPet");
+            assertTrue(poorMansIocContext.getBeanByName("noSuchBean") == null);
+            try {
+                poorMansIocContext.getBeanByType(Pet.class);
+                assert(false); // should throw exception
+            } catch(PoorMansIocRuntimeException e) {
+                // expected
+            }
+        } finally {
+            poorMansIocContext.setListener(null);
+        }
+
+        ContextMetrics.Snapshot snapshot = metrics.snapshot();
+        assertTrue(snapshot.getCreationNanos().containsKey("myBestFriend"));
+        assertTrue(snapshot.getCreationNanos().containsKey("myPet"));
+        assertThat(snapshot.getLookupsByType().get(Dog.class).getCount(), equalTo(2L));
+        assertThat(snapshot.getLookupsByName().getCount(), equalTo(1L));
+        assertThat(snapshot.getMisses(), equalTo(1L));
+        assertThat(snapshot.getAmbiguities(), equalTo(1L));
+        assertTrue(snapshot.getRegistrationNanos() > 0);
+        metrics.log();
+    }
+
+    @Test
+    public void testChildContext() {
+        poorMansIocContext.addConfigurationClass(DogHouse.class);
+        PoorMansIocContext child = poorMansIocContext.createChild();
+        child.addConfigurationClass(QualifiedAnimalYard.class);
+
+        Yard yard = child.getBeanByType(Yard.class);
+        assertTrue(yard instanceof DogYard);
+        Dog dog = child.getBeanByName("myBestFriend");
+        assertTrue(dog == poorMansIocContext.getBeanByName("myBestFriend"));
+        assertTrue(poorMansIocContext.getBeanByName("yardArea") == null);
+
+        child.addBean(new Cat(), "myPet");
+        List<Pet> pets = child.getAllBeansByType(Pet.class);
+        assertThat(pets.size(), equalTo(2));
+        List<Pet> parentPets = poorMansIocContext.getAllBeansByType(Pet.class);
+        assertThat(parentPets.size(), equalTo(1));
+    }
+
+    @Test
+    public void testChildContextShadowsParent() {
+        poorMansIocContext.addBean(new Dog(), "pet");
+        PoorMansIocContext child = poorMansIocContext.createChild();
+        child.addBean(new Cat(), "pet");
+
+        assertTrue(child.getBeanByName("pet") instanceof Cat);
+        assertTrue(child.getBeanByType(Pet.class) instanceof Cat);
+        assertTrue(child.getBeanByType(Dog.class) instanceof Dog);
+        assertTrue(poorMansIocContext.getBeanByName("pet") instanceof Dog);
+
+        child.clear();
+        assertTrue(child.getBeanByName("pet") instanceof Dog);
+    }
+
+    @Test
+    public void testAllBeansByTypeIsCached() {
+        List<Pet> none = poorMansIocContext.getAllBeansByType(Pet.class);
+        assertTrue(none.isEmpty());
+
+        poorMansIocContext.addConfigurationClass(CatHouse.class);
+        poorMansIocContext.addConfigurationClass(DogHouse.class);
+        List<Pet> pets = poorMansIocContext.getAllBeansByType(Pet.class);
+        assertTrue(pets == poorMansIocContext.getAllBeansByType(Pet.class));
+
+        poorMansIocContext.addBean(new Bird(), "bird");
+        List<Pet> morePets = poorMansIocContext.getAllBeansByType(Pet.class);
+        assertThat(morePets.size(), equalTo(3));
+        assertThat(pets.size(), equalTo(2));
+    }
+
+    @Test
+    public void testAllBeansByTypeDistinct() {
+        Dog dog = new Dog();
+        poorMansIocContext.addBean(dog, "dog");
+        poorMansIocContext.addBean(dog, "sameDog");
+        List<Dog> dogs = poorMansIocContext.getAllBeansByType(Dog.class);
+        assertThat(dogs.size(), equalTo(1));
+    }
+
+    @Test
+    public void testAllBeansByTypeWithPrototype() {
+        poorMansIocContext.addConfigurationClass(ScopedHouse.class);
+        List<Bird> birds = poorMansIocContext.getAllBeansByType(Bird.class);
+        List<Bird> moreBirds = poorMansIocContext.getAllBeansByType(Bird.class);
+        assertTrue(birds.get(0) != moreBirds.get(0));
+    }
+
+    @Test
+    public void testAllBeansByTypeSkipsPooledBeans() {
+        Dog dog = new Dog();
+        poorMansIocContext.addBean(dog, "dog");
+        poorMansIocContext.addBeanFactory("pooledDog", Dog.class, ScopeType.POOLED, Dog::new);
+        List<Dog> dogs = poorMansIocContext.getAllBeansByType(Dog.class);
+        assertThat(dogs, equalTo(Collections.singletonList(dog)));
+        List<Dog> visited = new ArrayList<>();
+        poorMansIocContext.forEachBeanOfType(Dog.class, visited::add);
+        assertThat(visited, equalTo(Collections.singletonList(dog)));
+    }
+
+    @Test
+    public void testForEachBeanOfType() {
+        poorMansIocContext.addConfigurationClass(CatHouse.class);
+        PoorMansIocContext child = poorMansIocContext.createChild();
+        child.addConfigurationClass(DogHouse.class);
+        List<Pet> visited = new ArrayList<>();
+        child.forEachBeanOfType(Pet.class, visited::add);
+        assertThat(visited.size(), equalTo(2));
+        assertTrue(visited.get(0) instanceof Dog);
+        assertTrue(visited.get(1) instanceof Cat);
+    }
+
+    @Test
+    public void testFreeze() {
+        poorMansIocContext.addConfigurationClass(CatHouse.class);
+        poorMansIocContext.addConfigurationClass(DogHouse.class);
+        poorMansIocContext.addConfigurationClass(LazyHouse.class);
+        PoorMansIocContext frozen = poorMansIocContext.freeze();
+        assertTrue(frozen.isFrozen());
+        assertTrue(frozen.freeze() == frozen);
+
+        assertTrue(frozen.getBeanByName("myPet") == poorMansIocContext.getBeanByName("myPet"));
+        assertTrue(frozen.getBeanByName("noSuchBean") == null);
+        assertTrue(frozen.getBeanByType(Canine.class) instanceof Dog);
+        assertTrue(frozen.getBeanByType(Pet.class, "lazyPet") instanceof Cat);
+        List<Pet> pets = frozen.getAllBeansByType(Pet.class);
+        assertThat(pets.size(), equalTo(3));
+        assertTrue(frozen.getBeanByType(Object.class, "myPet") instanceof Cat);
+        List<Yard> yards = frozen.getAllBeansByType(Yard.class);
+        assertTrue(yards.isEmpty());
+
+        try {
+            frozen.addBean(new Bird(), "bird");
+            assert(false); // should throw exception
+        } catch(Exception e) {
+            assertTrue(e instanceof PoorMansIocRuntimeException);
+            assertThat(e.getMessage(), equalTo("The context is frozen and can't be changed"));
+        }
+
+        // the original can still change without affecting the frozen copy
+        poorMansIocContext.addBean(new Bird(), "bird");
+        assertTrue(frozen.getBeanByName("bird") == null);
+
+        // the lazy beans of a copy are created from the beans of the copy, even once the original has been emptied
+        poorMansIocContext.addConfigurationClass(LazyBirdHouse.class);
+        PoorMansIocContext another = poorMansIocContext.freeze();
+        poorMansIocContext.clear();
+        assertTrue(another.getBeanByName("lazyBird") instanceof Bird);
+    }
+
+    public static class LazyBirdHouse {
+        @Lazy
+        public Bird lazyBird(final Canine canine) {
+            return new Bird();
+        }
+    }
+
+    @Test
+    public void testCloseFrozenCopy() {
+        ResourceHouse.CLOSED.clear();
+        poorMansIocContext.addConfigurationClass(ResourceHouse.class);
+        PoorMansIocContext frozen = poorMansIocContext.freeze();
+
+        // the singletons belong to the original, so closing the copy leaves them open
+        frozen.close();
+        assertTrue(ResourceHouse.CLOSED.isEmpty());
+        assertTrue(frozen.getBeanByName("pool") == poorMansIocContext.getBeanByName("pool"));
+
+        poorMansIocContext.close();
+        assertThat(ResourceHouse.CLOSED.size(), equalTo(3));
+    }
+
+    @Test
+    public void testScanForConfigurationClasses() throws Exception {
+        File cacheFile = File.createTempFile("poormansioc", ".idx");
+        cacheFile.delete();
+        try {
+            String classPath = System.getProperty("java.class.path");
+            List<Class<?>> scanned = ConfigurationIndex.scan(classPath, cacheFile, getClass().getClassLoader());
+            assertTrue(scanned.contains(ConfigurationProcessorTest.CarConfiguration.class));
+            assertTrue(!scanned.contains(CatHouse.class));
+
+            List<String> cached = Files.readAllLines(cacheFile.toPath());
+            assertTrue(cached.contains(ConfigurationProcessorTest.CarConfiguration.class.getName()));
+            assertThat(ConfigurationIndex.scan(classPath, cacheFile, getClass().getClassLoader()), equalTo(scanned));
+        } finally {
+            cacheFile.delete();
+        }
+    }
+
+    @Test
+    public void testStaleScanCacheIsScannedAgain() throws Exception {
+        File cacheFile = File.createTempFile("poormansioc", ".idx");
+        cacheFile.delete();
+        try {
+            String classPath = System.getProperty("java.class.path");
+            List<Class<?>> scanned = ConfigurationIndex.scan(classPath, cacheFile, getClass().getClassLoader());
+            Files.write(cacheFile.toPath(), "\ncom.example.NoSuchConfiguration".getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.APPEND);
+
+            assertThat(ConfigurationIndex.scan(classPath, cacheFile, getClass().getClassLoader()), equalTo(scanned));
+            assertTrue(!Files.readAllLines(cacheFile.toPath()).contains("com.example.NoSuchConfiguration"));
+        } finally {
+            cacheFile.delete();
+        }
+    }
+
+    @Test
+    public void testScanCacheWriteFailureLeavesNoTemporaryFile() throws Exception {
+        File directory = Files.createTempDirectory("poormansioc").toFile();
+        File cacheFile = new File(directory, "scan.idx");
+        // a non-empty directory where the cache should go can't be replaced, so the write fails
+        File blocker = new File(cacheFile, "blocker");
+        try {
+            assertTrue(blocker.mkdirs());
+            List<Class<?>> scanned = ConfigurationIndex.scan(System.getProperty("java.class.path"), cacheFile,
+                    getClass().getClassLoader());
+            assertTrue(scanned.contains(ConfigurationProcessorTest.CarConfiguration.class));
+            assertThat(Arrays.asList(directory.list()), equalTo(Collections.singletonList("scan.idx")));
+        } finally {
+            blocker.delete();
+            cacheFile.delete();
+            directory.delete();
+        }
+    }
+
+    @Test
+    public void testDiscoveredClassesUseTheirInitializers() {
+        assertTrue(ConfigurationIndex.findInitializer(ConfigurationProcessorTest.CarConfiguration.class)
+                instanceof ConfigurationProcessorTest_CarConfiguration_Initializer);
+        assertTrue(ConfigurationIndex.findInitializer(DogHouse.class) == null);
+
+        // the cars need engines while they are added, so the engines come first
+        List<ConfigurationUnit> units = ConfigurationUnit.plan(Arrays.asList(
+                ConfigurationProcessorTest.CarConfiguration.class, DogHouse.class,
+                ConfigurationProcessorTest.EngineConfiguration.class));
+        assertThat(units.size(), equalTo(3));
+        assertTrue(units.get(0).getInitializer() instanceof ConfigurationProcessorTest_EngineConfiguration_Initializer);
+        assertTrue(units.get(1).getInitializer() instanceof ConfigurationProcessorTest_CarConfiguration_Initializer);
+        assertTrue(units.get(2).getConfigurationClass() == DogHouse.class);
+        assertTrue(units.get(2).getInitializer() == null);
+
+        for (ConfigurationUnit unit : units) {
+            unit.addTo(poorMansIocContext);
+        }
+        ConfigurationProcessorTest.Car car = poorMansIocContext.getBeanByName("car");
+        assertTrue(car.getEngine() == poorMansIocContext.getBeanByName("electric"));
+        assertTrue(poorMansIocContext.getBeanByName("myBestFriend") instanceof Dog);
+
+        // without any initializers, the classes are added together by reflection
+        assertTrue(ConfigurationUnit.plan(Arrays.asList(DogHouse.class, CatHouse.class)) == null);
+    }
+
+    @Test
+    public void testConcurrentAddAndLookup() throws Exception {
+        final int writers = 4;
+        final int readers = 4;
+        final int beansPerWriter = 2000;
+        final PoorMansIocContext context = new PoorMansIocContext();
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicBoolean writing = new AtomicBoolean(true);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        ExecutorService executor = Executors.newFixedThreadPool(writers + readers);
+
+        CountDownLatch writersDone = new CountDownLatch(writers);
+        for (int w = 0; w < writers; w++) {
+            final int writer = w;
+            executor.submit(() -> {
+                try {
+                    start.await();
+                    for (int i = 0; i < beansPerWriter; i++) {
+                        context.addBean(new Cat(), "cat-" + writer + "-" + i);
+                    }
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                } finally {
+                    writersDone.countDown();
+                }
+            });
+        }
+        for (int r = 0; r < readers; r++) {
+            final int reader = r;
+            executor.submit(() -> {
+                try {
+                    start.await();
+                    int i = 0;
+                    while (writing.get()) {
+                        String name = "cat-" + (reader % writers) + "-" + (i++ % beansPerWriter);
+                        Cat byName = context.getBeanByName(name);
+                        if (byName != null) {
+                            Cat byType = context.getBeanByType(Cat.class, name);
+                            assertTrue(byType == byName);
+                            List<Pet> pets = context.getAllBeansByType(Pet.class);
+                            assertTrue(pets.contains(byName));
+                        }
+                    }
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                }
+            });
+        }
+
+        start.countDown();
+        assertTrue(writersDone.await(60, TimeUnit.SECONDS));
+        writing.set(false);
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(60, TimeUnit.SECONDS));
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+        List<Cat> cats = context.getAllBeansByType(Cat.class);
+        assertThat(cats.size(), equalTo(writers * beansPerWriter));
+    }
+
+}
@@ -0,0 +1,246 @@
+package com.github.jlgrock.poormansioc.processor;
+
+import com.github.jlgrock.poormansioc.Configuration;
+import com.github.jlgrock.poormansioc.DestroyMethod;
+import com.github.jlgrock.poormansioc.Evictable;
+import com.github.jlgrock.poormansioc.Lazy;
+import com.github.jlgrock.poormansioc.PooledBean;
+import com.github.jlgrock.poormansioc.PoorMansIocContext;
+import com.github.jlgrock.poormansioc.PoorMansIocRuntimeException;
+import com.github.jlgrock.poormansioc.Qualifier;
+import com.github.jlgrock.poormansioc.Scope;
+import com.github.jlgrock.poormansioc.ScopeType;
+import com.github.jlgrock.poormansioc.TypeToken;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The initializers used here are generated from the configuration classes below when this test is compiled.
+ */
+public class ConfigurationProcessorTest {
+
+    public interface Engine {}
+
+    public static class PetrolEngine implements Engine {}
+
+    public static class ElectricEngine implements Engine {}
+
+    public static class Car {
+        private final Engine engine;
+
+        public Car(final Engine engineIn) {
+            engine = engineIn;
+        }
+
+        public Engine getEngine() {
+            return engine;
+        }
+    }
+
+    @Configuration
+    public static class EngineConfiguration {
+        public PetrolEngine petrol() {
+            return new PetrolEngine();
+        }
+
+        public ElectricEngine electric() {
+            return new ElectricEngine();
+        }
+
+        public List<PetrolEngine> petrolSpares() {
+            return Collections.singletonList(new PetrolEngine());
+        }
+
+        public List<ElectricEngine> electricSpares() {
+            return Collections.singletonList(new ElectricEngine());
+        }
+    }
+
+    @Configuration
+    public static class CarConfiguration {
+        public Car car(@Qualifier("electric") final Engine engine) {
+            return new Car(engine);
+        }
+
+        @Lazy
+        public Car lazyCar(@Qualifier("petrol") final Engine engine) {
+            return new Car(engine);
+        }
+
+        public Car providedCar(@Qualifier("petrol") final Supplier<? extends Engine> engine) {
+            return new Car(engine.get());
+        }
+
+        public Car spareCar(final List<ElectricEngine> spares) {
+            return new Car(spares.get(0));
+        }
+
+        public Car providedSpareCar(final Supplier<List<PetrolEngine>> spares) {
+            return new Car(spares.get().get(0));
+        }
+
+        public CompletableFuture<Car> asyncCar() {
+            return CompletableFuture.supplyAsync(() -> new Car(new PetrolEngine()));
+        }
+
+        public CompletableFuture<List<Car>> asyncFleet() {
+            return CompletableFuture.supplyAsync(() -> Collections.singletonList(new Car(new ElectricEngine())));
+        }
+
+        @Evictable
+        public Car evictableCar(@Qualifier("electric") final Engine engine) {
+            return new Car(engine);
+        }
+
+        @Scope(ScopeType.PROTOTYPE)
+        public StringBuilder builder() {
+            return new StringBuilder();
+        }
+    }
+
+    public static class Garage {
+        private boolean shutdown;
+
+        public void shutdown() {
+            shutdown = true;
+        }
+
+        public boolean isShutdown() {
+            return shutdown;
+        }
+    }
+
+    @Configuration
+    public static class GarageConfiguration {
+        @DestroyMethod("shutdown")
+        public Garage garage() {
+            return new Garage();
+        }
+
+        @Lazy
+        @DestroyMethod("shutdown")
+        public Garage lazyGarage() {
+            return new Garage();
+        }
+
+        @Scope(value = ScopeType.POOLED, poolSize = 1)
+        @DestroyMethod("shutdown")
+        public Garage pooledGarage() {
+            return new Garage();
+        }
+
+        @Lazy
+        public Map<String, Garage> garagesByName() {
+            return Collections.singletonMap("spare", new Garage());
+        }
+    }
+
+    private PoorMansIocContext context;
+
+    @Before
+    public void setup() {
+        context = new PoorMansIocContext();
+    }
+
+    @Test
+    public void testGeneratedInitializer() {
+        new ConfigurationProcessorTest_EngineConfiguration_Initializer().initialize(context);
+        new ConfigurationProcessorTest_CarConfiguration_Initializer().initialize(context);
+
+        assertTrue(context.getBeanByName("EngineConfiguration") instanceof EngineConfiguration);
+        Car car = context.getBeanByName("car");
+        assertTrue(car.getEngine() instanceof ElectricEngine);
+        Car lazyCar = context.getBeanByName("lazyCar");
+        assertTrue(lazyCar.getEngine() instanceof PetrolEngine);
+        Car providedCar = context.getBeanByName("providedCar");
+        assertTrue(providedCar.getEngine() == context.getBeanByName("petrol"));
+        Car asyncCar = context.getBeanByName("asyncCar");
+        assertTrue(asyncCar.getEngine() instanceof PetrolEngine);
+        Car spareCar = context.getBeanByName("spareCar");
+        assertTrue(spareCar.getEngine() == context.<List<ElectricEngine>>getBeanByName("electricSpares").get(0));
+        Car providedSpareCar = context.getBeanByName("providedSpareCar");
+        assertTrue(providedSpareCar.getEngine() == context.<List<PetrolEngine>>getBeanByName("petrolSpares").get(0));
+        List<Car> fleet = context.getBeanByType(new TypeToken<List<Car>>() { });
+        assertTrue(fleet == context.getBeanByName("asyncFleet"));
+        assertTrue(context.getBeanByName("builder") != context.getBeanByName("builder"));
+        Car evictableCar = context.getBeanByName("evictableCar");
+        assertTrue(evictableCar.getEngine() == context.getBeanByName("electric"));
+        assertThat(context.getBeanCache().getMisses(), equalTo(1L));
+    }
+
+    @Test
+    public void testGeneratedInitializerMatchesReflection() {
+        PoorMansIocContext reflective = new PoorMansIocContext();
+        reflective.addConfigurationClass(EngineConfiguration.class);
+        reflective.addConfigurationClass(CarConfiguration.class);
+        reflective.addConfigurationClass(GarageConfiguration.class);
+        new ConfigurationProcessorTest_EngineConfiguration_Initializer().initialize(context);
+        new ConfigurationProcessorTest_CarConfiguration_Initializer().initialize(context);
+        new ConfigurationProcessorTest_GarageConfiguration_Initializer().initialize(context);
+
+        for (String name : new String[] {"petrol", "electric", "car", "lazyCar", "providedCar", "spareCar", "providedSpareCar", "asyncCar",
+                "asyncFleet", "evictableCar", "garage", "lazyGarage", "garagesByName"}) {
+            Object expected = reflective.getBeanByName(name);
+            Object actual = context.getBeanByName(name);
+            assertThat(actual.getClass(), equalTo(expected.getClass()));
+        }
+    }
+
+    @Test
+    public void testGeneratedFactoriesUseTheCreatingContext() {
+        new ConfigurationProcessorTest_EngineConfiguration_Initializer().initialize(context);
+        new ConfigurationProcessorTest_CarConfiguration_Initializer().initialize(context);
+        PoorMansIocContext frozen = context.freeze();
+        context.clear();
+
+        // the lazy car is created by the frozen copy, so its engine has to come from there
+        Car lazyCar = frozen.getBeanByName("lazyCar");
+        assertTrue(lazyCar.getEngine() == frozen.getBeanByName("petrol"));
+        Car evictableCar = frozen.getBeanByName("evictableCar");
+        assertTrue(evictableCar.getEngine() == frozen.getBeanByName("electric"));
+    }
+
+    @Test
+    public void testGeneratedInitializerKeepsDestroyMethodsAndTypes() {
+        new ConfigurationProcessorTest_GarageConfiguration_Initializer().initialize(context);
+        Garage garage = context.getBeanByName("garage");
+        Garage lazyGarage = context.getBeanByName("lazyGarage");
+        Garage pooledGarage;
+        try (PooledBean<Garage> borrowed = context.borrowBean(Garage.class, "pooledGarage")) {
+            pooledGarage = borrowed.get();
+        }
+        assertTrue(context.getBeanByType(new TypeToken<Map<String, Garage>>() { }) != null);
+        try {
+            context.getBeanByType(new TypeToken<Map<String, Car>>() { });
+            assert(false); // should throw exception
+        } catch (PoorMansIocRuntimeException e) {
+            assertTrue(e.getMessage().startsWith("Unable to match on type"));
+        }
+
+        context.close();
+        assertTrue(garage.isShutdown());
+        assertTrue(lazyGarage.isShutdown());
+        assertTrue(pooledGarage.isShutdown());
+    }
+
+    @Test
+    public void testDiscoveredConfigurationClasses() {
+        context.addDiscoveredConfigurationClasses();
+
+        assertTrue(context.getBeanByName("CarConfiguration") instanceof CarConfiguration);
+        Car car = context.getBeanByName("car");
+        assertTrue(car.getEngine() instanceof ElectricEngine);
+        Car providedCar = context.getBeanByName("providedCar");
+        assertTrue(providedCar.getEngine() == context.getBeanByName("petrol"));
+    }
+}